@@ -0,0 +1,48 @@
+package com.tailogs;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+// Вывод команды в консоль: строки из потока процесса копятся в ConsoleBuffer и переносятся в
+// документ одной вставкой в EDT. Одна операция - одна строка вывода
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ConsoleBenchmark {
+    private static final int BATCH = 1000; // Строк между обновлениями экрана
+
+    @Param({"10000"})
+    int maxLines;
+
+    private ConsoleBuffer buffer;
+    private String[] lines;
+
+    @Setup
+    public void setUp() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> buffer = new ConsoleBuffer(new JTextArea(), maxLines));
+        lines = new String[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            lines[i] = "[INFO] Compiling module " + i + " of " + BATCH + " ... done in " + (i % 97) + " ms";
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(buffer::dispose);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void appendAndFlush() throws InterruptedException, InvocationTargetException {
+        for (String line : lines) {
+            buffer.append(line);
+        }
+        SwingUtilities.invokeAndWait(buffer::flush);
+    }
+}
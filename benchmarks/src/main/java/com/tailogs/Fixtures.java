@@ -0,0 +1,77 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+// Генерация входных данных для бенчмарков: исходные файлы заданного размера и деревья каталогов
+final class Fixtures {
+    private static final String[] LINES = {
+            "package com.example.generated;",
+            "",
+            "import java.util.List;",
+            "public final class Generated {",
+            "    // Комментарий с не-ASCII символами",
+            "    private static final int LIMIT = 1024;",
+            "    public int sum(List<Integer> values) {",
+            "        int total = 0;",
+            "        for (int value : values) total += value;",
+            "        return total < LIMIT ? total : LIMIT;",
+            "    }",
+            "}",
+    };
+
+    private Fixtures() {
+    }
+
+    // Текст, похожий на исходный код Java, примерно bytes байт в UTF-8; crlf - окончания строк Windows
+    static String source(long bytes, boolean crlf) {
+        String separator = crlf ? "\r\n" : "\n";
+        StringBuilder text = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, bytes));
+        Random random = new Random(42);
+        while (text.length() < bytes) {
+            text.append(LINES[random.nextInt(LINES.length)]).append(separator);
+        }
+        return text.toString();
+    }
+
+    static Path sourceFile(Path directory, long bytes, boolean crlf) throws IOException {
+        Path file = directory.resolve("Generated" + bytes + (crlf ? "-crlf" : "") + ".java");
+        Files.writeString(file, source(bytes, crlf), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    // Дерево глубиной depth: в каждом каталоге fanout подкаталогов и files файлов
+    static void tree(Path directory, int depth, int fanout, int files) throws IOException {
+        Files.createDirectories(directory);
+        for (int i = 0; i < files; i++) {
+            Files.writeString(directory.resolve("File" + i + ".java"), LINES[i % LINES.length]);
+        }
+        if (depth == 0) return;
+        for (int i = 0; i < fanout; i++) {
+            tree(directory.resolve("dir" + i), depth - 1, fanout, files);
+        }
+    }
+
+    static void delete(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) return;
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package com.tailogs;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Путь открытия файла из Main.loadIntoTab: чтение с нормализацией окончаний строк и построение
+// документа с подсветкой синтаксиса вне EDT
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class OpenFileBenchmark {
+    @Param({"1048576", "33554432"})
+    long bytes;
+
+    @Param({"false", "true"})
+    boolean crlf;
+
+    private Path directory;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("blackparticle-open");
+        file = Fixtures.sourceFile(directory, bytes, crlf);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return TextFileReader.read(file, StandardCharsets.UTF_8, _ -> {
+        });
+    }
+
+    @Benchmark
+    public RSyntaxDocument readIntoDocument() throws Exception {
+        String text = TextFileReader.read(file, StandardCharsets.UTF_8, _ -> {
+        });
+        RSyntaxDocument document = new RSyntaxDocument(SyntaxConstants.SYNTAX_STYLE_JAVA);
+        document.insertString(0, text, null);
+        return document;
+    }
+}
@@ -0,0 +1,60 @@
+package com.tailogs;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Загрузка дерева проекта: чтение одного каталога для ленивого узла дерева и полный обход
+// проекта, с которого начинается построение индексов
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ProjectTreeBenchmark {
+    @Param({"4"})
+    int depth;
+
+    @Param({"6"})
+    int fanout;
+
+    @Param({"20"})
+    int files;
+
+    @Param({"5000"})
+    int wideDirectoryFiles;
+
+    private Path root;
+    private File wideDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("blackparticle-tree");
+        Fixtures.tree(root.resolve("deep"), depth, fanout, files);
+        Path wide = root.resolve("wide");
+        Fixtures.tree(wide, 0, 0, wideDirectoryFiles);
+        wideDirectory = wide.toFile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public List<DefaultMutableTreeNode> listWideDirectory() {
+        return ProjectTreeLoader.listChildren(wideDirectory);
+    }
+
+    @Benchmark
+    public List<Path> walkDeepTree() throws IOException {
+        return ProjectFiles.walk(root.resolve("deep"));
+    }
+}
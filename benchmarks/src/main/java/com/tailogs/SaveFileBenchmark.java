@@ -0,0 +1,43 @@
+package com.tailogs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Путь сохранения из Main.saveFile: снимок документа и атомарная запись через временный файл с fsync
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SaveFileBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    int chars;
+
+    private Path directory;
+    private Path target;
+    private char[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("blackparticle-save");
+        target = directory.resolve("Saved.java");
+        content = Fixtures.source(chars, false).substring(0, chars).toCharArray();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public void writeAtomically() throws IOException {
+        SaveEngine.writeAtomically(target, CharBuffer.wrap(content), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,27 @@
+package com.tailogs;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Выбор подсветки по имени файла, выполняется при каждом открытии файла
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SyntaxStyleBenchmark {
+    private static final String[] NAMES = {
+            "Main.java", "engine.cpp", "engine.hpp", "script.py", "Program.cs", "index.js", "README",
+            "build.gradle.kts", "server.go", "App.scala", ".gitignore", "Makefile", "widget.dart", "notes.TXT",
+    };
+
+    @Benchmark
+    public void syntaxStyle(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(Main.getSyntaxStyle(name));
+        }
+    }
+}
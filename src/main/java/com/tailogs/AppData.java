@@ -0,0 +1,27 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+
+// Служебные файлы редактора хранятся в ~/.blackparticle (или в blackparticle.home)
+final class AppData {
+    private AppData() {
+    }
+
+    static Path directory(String name) throws IOException {
+        String home = System.getProperty("blackparticle.home", System.getProperty("user.home") + "/.blackparticle");
+        return Files.createDirectories(Path.of(home, name));
+    }
+
+    // Короткое имя файла, однозначно связанное с путем (для кешей по каталогу проекта)
+    static String key(Path path) {
+        CRC32 crc = new CRC32();
+        crc.update(path.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        String name = path.getFileName() != null ? path.getFileName().toString().replaceAll("[^A-Za-z0-9_.-]", "_") : "root";
+        return name + "-" + HexFormat.of().toHexDigits((int) crc.getValue());
+    }
+}
@@ -0,0 +1,203 @@
+package com.tailogs;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Одна запущенная команда: собственный процесс, виртуальный поток для чтения вывода
+// и собственный буфер консоли. Вывод декодируется из байтов один раз, без перекодирования строк
+class CommandSession {
+    private static final AtomicInteger counter = new AtomicInteger();
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final String command;
+    private final ConsoleBuffer buffer;
+    private final Charset charset;
+    private volatile Process process;
+    private volatile boolean killed;
+    private volatile boolean running;
+
+    CommandSession(String command, ConsoleBuffer buffer, Charset charset) {
+        this.command = command;
+        this.buffer = buffer;
+        this.charset = charset;
+    }
+
+    String command() {
+        return command;
+    }
+
+    ConsoleBuffer buffer() {
+        return buffer;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    // Кодировка вывода процессов: из blackparticle.console.charset или кодировка системы
+    static Charset outputCharset() {
+        String name = System.getProperty("blackparticle.console.charset", System.getProperty("native.encoding"));
+        try {
+            return name != null ? Charset.forName(name) : Charset.defaultCharset();
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    // onFinish получает строку со статистикой выполнения и вызывается в EDT
+    void start(Consumer<String> onFinish) {
+        running = true;
+        Thread.ofVirtual().name("command-" + counter.incrementAndGet()).start(() -> {
+            String summary = run();
+            running = false;
+            buffer.append(summary);
+            SwingUtilities.invokeLater(() -> onFinish.accept(summary));
+        });
+    }
+
+    // Работает и до запуска процесса: флаг ставится первым, и run() сам завершит процесс
+    // сразу после старта
+    void kill() {
+        killed = true;
+        Process current = process;
+        if (current != null) {
+            destroy(current);
+        }
+    }
+
+    private static void destroy(Process process) {
+        if (!process.isAlive()) return;
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private String run() {
+        long started = System.nanoTime();
+        long bytes = 0;
+        String status;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(split(command));
+            processBuilder.redirectErrorStream(true);
+            process = processBuilder.start();
+            if (killed) {
+                destroy(process); // Вкладку закрыли, пока процесс запускался
+            }
+            bytes = pump(process.getInputStream(), started);
+            int exitCode = process.waitFor();
+            status = killed ? "killed" : "exit code " + exitCode;
+        } catch (IOException | InterruptedException | IllegalArgumentException e) {
+            buffer.append("Command execution failed: " + e.getMessage());
+            status = "failed";
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        return "[" + command + ": " + status + " | " + millis + " ms | " + formatBytes(bytes) + "]";
+    }
+
+    // Читает сырые байты вывода, декодирует их потоково и режет на строки
+    private long pump(InputStream in, long started) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        byte[] raw = new byte[READ_BUFFER_SIZE];
+        ByteBuffer bytes = ByteBuffer.wrap(raw);
+        CharBuffer chars = CharBuffer.allocate(READ_BUFFER_SIZE);
+        StringBuilder line = new StringBuilder();
+        long total = 0;
+        int n;
+        while ((n = in.read(raw, bytes.position(), raw.length - bytes.position())) >= 0) {
+            if (total == 0 && n > 0) {
+                Metrics.record(Metrics.FIRST_OUTPUT, System.nanoTime() - started);
+            }
+            total += n;
+            bytes.position(bytes.position() + n);
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, false);
+                chars.flip();
+                splitLines(chars, line);
+                chars.clear();
+            } while (result.isOverflow());
+            bytes.compact(); // Незавершенная многобайтовая последовательность остается до следующего чтения
+        }
+        bytes.flip();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        splitLines(chars, line);
+        if (!line.isEmpty()) {
+            buffer.append(line.toString());
+        }
+        return total;
+    }
+
+    private void splitLines(CharBuffer chars, StringBuilder line) {
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                buffer.append(line.toString());
+                line.setLength(0);
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    // Разбивает строку команды на аргументы с учетом кавычек
+    static List<String> split(String command) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quote = 0;
+        boolean inArgument = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    arguments.add(current.toString());
+                    current.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                current.append(c);
+                inArgument = true;
+            }
+        }
+        if (inArgument) {
+            arguments.add(current.toString());
+        }
+        if (arguments.isEmpty()) {
+            throw new IllegalArgumentException("Empty command");
+        }
+        return arguments;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
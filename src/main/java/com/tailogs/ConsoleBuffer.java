@@ -0,0 +1,206 @@
+package com.tailogs;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Буфер вывода консоли. Строки из любых потоков копятся в кольцевом буфере и переносятся
+// в JTextArea одной вставкой с фиксированной частотой кадров. В документе хранится не больше
+// maxLines строк, более старый вывод сбрасывается в файл на диске, где его можно просмотреть и найти
+class ConsoleBuffer {
+    static final int FLUSH_INTERVAL_MS = 33; // ~30 обновлений в секунду
+    private static final Logger logger = Logger.getLogger(ConsoleBuffer.class.getName());
+
+    private final JTextArea area;
+    private final int maxLines;
+    private final Timer flushTimer;
+    private final ExecutorService spillExecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+    private final Path spillFile;
+    private BufferedWriter spillWriter; // Только из spillExecutor
+
+    // Кольцевой буфер еще не показанных строк, защищен this
+    private final String[] ring;
+    private int head;
+    private int size;
+    private final StringBuilder overflow = new StringBuilder(); // Вытесненные из кольца строки, защищен this
+
+    ConsoleBuffer(JTextArea area, int maxLines) {
+        this.area = area;
+        this.maxLines = maxLines;
+        this.ring = new String[maxLines];
+        try {
+            spillFile = Files.createTempFile("blackparticle-console", ".log");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        spillFile.toFile().deleteOnExit();
+        flushTimer = new Timer(FLUSH_INTERVAL_MS, _ -> flush());
+        flushTimer.start();
+    }
+
+    Path spillFile() {
+        return spillFile;
+    }
+
+    // Можно вызывать из любого потока
+    synchronized void append(String line) {
+        int tail = (head + size) % ring.length;
+        if (size == ring.length) {
+            // Строка так и не попадет на экран: при следующем обновлении она уйдет прямо в файл
+            overflow.append(ring[head]).append('\n');
+            head = (head + 1) % ring.length;
+        } else {
+            size++;
+        }
+        ring[tail] = line;
+    }
+
+    void clear() {
+        synchronized (this) {
+            head = 0;
+            size = 0;
+            overflow.setLength(0);
+        }
+        area.setText("");
+        spillExecutor.execute(() -> {
+            try {
+                closeWriter();
+                Files.write(spillFile, new byte[0]);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "An exception occurred", e);
+            }
+        });
+    }
+
+    // Останавливает обновление и удаляет файл со сброшенным выводом
+    void dispose() {
+        flushTimer.stop();
+        spillExecutor.execute(() -> {
+            try {
+                closeWriter();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "An exception occurred", e);
+            }
+        });
+        spillExecutor.shutdown();
+    }
+
+    // Переносит накопленные строки в документ одной вставкой, вызывается таймером в EDT
+    void flush() {
+        StringBuilder text;
+        String overflowText;
+        long started = System.nanoTime();
+        synchronized (this) {
+            if (size == 0) return;
+            overflowText = overflow.toString();
+            overflow.setLength(0);
+            text = new StringBuilder(size * 64);
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) % ring.length;
+                text.append(ring[index]).append('\n');
+                ring[index] = null;
+            }
+            head = 0;
+            size = 0;
+        }
+        Document document = area.getDocument();
+        try {
+            if (!overflowText.isEmpty()) {
+                // Кольцо переполнилось: новые строки целиком заменяют документ, а весь более старый
+                // вывод уходит в файл в исходном порядке
+                spill(document.getText(0, document.getLength()));
+                spill(overflowText);
+                document.remove(0, document.getLength());
+            }
+            document.insertString(document.getLength(), text.toString(), null);
+            trim(document);
+        } catch (BadLocationException e) {
+            logger.log(Level.SEVERE, "An exception occurred", e);
+        }
+        area.setCaretPosition(document.getLength());
+        Metrics.record(Metrics.CONSOLE_FLUSH, System.nanoTime() - started);
+    }
+
+    // Удаляет из начала документа строки сверх maxLines и отправляет их в файл
+    private void trim(Document document) throws BadLocationException {
+        Element root = document.getDefaultRootElement();
+        int excess = root.getElementCount() - 1 - maxLines; // Последний элемент - пустая строка после \n
+        if (excess <= 0) return;
+        int end = root.getElement(excess).getStartOffset();
+        spill(document.getText(0, end));
+        document.remove(0, end);
+    }
+
+    private void spill(String text) {
+        spillExecutor.execute(() -> {
+            try {
+                if (spillWriter == null) {
+                    spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                spillWriter.write(text);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "An exception occurred", e);
+            }
+        });
+    }
+
+    private void closeWriter() throws IOException {
+        if (spillWriter != null) {
+            spillWriter.close();
+            spillWriter = null;
+        }
+    }
+
+    // Дожидается записи всего сброшенного вывода на диск; вызывать не из EDT
+    void syncSpill() throws IOException {
+        try {
+            spillExecutor.submit(() -> {
+                if (spillWriter != null) spillWriter.flush();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Ищет подстроку во всем выводе: сначала в сброшенном на диск, затем в показанном.
+    // visibleText - снимок текста консоли, сделанный в EDT; вызывать не из EDT
+    List<String> search(String query, String visibleText, int limit) throws IOException {
+        syncSpill();
+        List<String> matches = new ArrayList<>();
+        long lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && matches.size() < limit) {
+                lineNumber++;
+                if (line.contains(query)) matches.add(lineNumber + ": " + line);
+            }
+        }
+        for (String line : visibleText.split("\n")) {
+            if (matches.size() >= limit) break;
+            lineNumber++;
+            if (line.contains(query)) matches.add(lineNumber + ": " + line);
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,114 @@
+package com.tailogs;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+// Окно диагностики: процентили задержек из Metrics и последние зависания EDT со стеками.
+// Пока окно открыто, данные обновляются раз в секунду
+class DiagnosticsDialog extends JDialog {
+    private static final int REFRESH_MS = 1000;
+    private static final String[] COLUMNS = {"Operation", "Count", "p50 ms", "p90 ms", "p99 ms", "Max ms"};
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final EdtWatchdog watchdog;
+    private final SummaryModel model = new SummaryModel();
+    private final JTextArea stallsArea = new JTextArea();
+    private final Timer refreshTimer = new Timer(REFRESH_MS, _ -> refresh());
+
+    DiagnosticsDialog(Frame owner, EdtWatchdog watchdog) {
+        super(owner, "Diagnostics", false);
+        this.watchdog = watchdog;
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        stallsArea.setEditable(false);
+        stallsArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(_ -> {
+            Metrics.reset();
+            refresh();
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(new JLabel("Record with -XX:StartFlightRecording to get com.tailogs.* JFR events"));
+        buttons.add(resetButton);
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(stallsArea));
+        split.setDividerLocation(200);
+        JPanel content = new JPanel(new BorderLayout());
+        content.add(split, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(800, 500);
+        setLocationRelativeTo(owner);
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        if (visible) {
+            refresh();
+            refreshTimer.start();
+        } else {
+            refreshTimer.stop();
+        }
+        super.setVisible(visible);
+    }
+
+    private void refresh() {
+        model.update(Metrics.summaries());
+        List<EdtWatchdog.Stall> stalls = watchdog.recentStalls();
+        StringBuilder text = new StringBuilder(stalls.isEmpty() ? "No EDT stalls recorded\n" : "");
+        for (EdtWatchdog.Stall stall : stalls) {
+            text.append(TIME.format(stall.at())).append("  EDT stalled for ")
+                    .append(String.format("%.0f ms", stall.nanos() / 1_000_000.0)).append('\n')
+                    .append(stall.stackTrace()).append('\n');
+        }
+        if (!text.toString().equals(stallsArea.getText())) {
+            stallsArea.setText(text.toString());
+            stallsArea.setCaretPosition(0);
+        }
+    }
+
+    private static class SummaryModel extends AbstractTableModel {
+        private List<Metrics.Summary> rows = List.of();
+
+        void update(List<Metrics.Summary> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Metrics.Summary summary = rows.get(row);
+            return switch (column) {
+                case 0 -> summary.operation();
+                case 1 -> summary.count();
+                case 2 -> millis(summary.p50());
+                case 3 -> millis(summary.p90());
+                case 4 -> millis(summary.p99());
+                default -> millis(summary.max());
+            };
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.2f", micros / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.tailogs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// LRU открытых вкладок, ограниченный суммарным числом символов загруженных документов.
+// При превышении лимита вытесняются давно не использованные чистые неактивные документы
+final class DocumentCache {
+    private final long maxChars;
+    private final LinkedHashMap<File, EditorTab> tabs = new LinkedHashMap<>(16, 0.75f, true); // Порядок доступа
+
+    DocumentCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    // Вкладка файла с отметкой использования или null
+    EditorTab get(File file) {
+        return tabs.get(file);
+    }
+
+    // Проверка без отметки использования
+    boolean contains(File file) {
+        return tabs.containsKey(file);
+    }
+
+    void put(EditorTab tab) {
+        tabs.put(tab.file(), tab);
+    }
+
+    void remove(File file) {
+        tabs.remove(file);
+    }
+
+    long loadedChars() {
+        long total = 0;
+        for (EditorTab tab : tabs.values()) {
+            total += tab.length();
+        }
+        return total;
+    }
+
+    // Вытесняет документы, пока их суммарный размер больше лимита; возвращает вытесненные вкладки
+    List<EditorTab> trim(EditorTab active) {
+        List<EditorTab> evicted = new ArrayList<>();
+        long total = loadedChars();
+        Iterator<EditorTab> eldestFirst = tabs.values().iterator();
+        while (total > maxChars && eldestFirst.hasNext()) {
+            EditorTab tab = eldestFirst.next();
+            if (tab == active || !tab.isLoaded() || tab.isDirty()) continue;
+            total -= tab.length();
+            tab.evict();
+            evicted.add(tab);
+        }
+        return evicted;
+    }
+}
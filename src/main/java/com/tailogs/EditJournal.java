@@ -0,0 +1,503 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+// Журнал правок одного буфера для восстановления после сбоя. Каждая вставка и удаление
+// дописываются записью в конец отображенного в память файла, так что стоимость автосохранения
+// пропорциональна правкам, а не размеру буфера. Когда журнал разрастается, он в фоне сворачивается
+// в снимок текста. После сбоя текст восстанавливается из основы (файла на диске или снимка)
+// и записей журнала. После сохранения журнал сбрасывается
+final class EditJournal {
+    private static final Logger logger = Logger.getLogger(EditJournal.class.getName());
+    private static final int MAGIC = 0x42504A31; // "BPJ1"
+    private static final byte BASE_FILE = 0; // Основа - файл на диске с указанными размером и временем изменения
+    private static final byte BASE_SNAPSHOT = 1; // Основа - снимок <имя>.<baseSeq>.snapshot
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_HEADER = 8; // Длина записи и CRC32C
+    private static final int PAYLOAD_HEADER = 13; // Тип, номер правки, смещение, длина
+    private static final long REGION_SIZE = 4L << 20; // Файл растет и отображается кусками по 4 МБ
+    private static final long COMPACT_MIN_BYTES = 16L << 20;
+    private static final long FORCE_INTERVAL_MS = 1000;
+    private static final int COPY_CHUNK = 64 * 1024;
+
+    // Все журналы пишет один фоновый поток: EDT только ставит записи в очередь, порядок сохраняется.
+    // Отображения принадлежат этому потоку, поэтому их области памяти ограничены им (Arena.ofConfined)
+    private static final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+    private static final List<EditJournal> open = new ArrayList<>(); // Журналы с открытым файлом, только из writer
+
+    // Восстановленный буфер: file == null для несохраненного нового файла
+    record Recovered(String name, Path file, String text) {
+        // Тот же текст под новым именем, не связанный с файлом
+        Recovered asUntitled() {
+            return new Recovered("untitled-" + UUID.randomUUID(), null, text);
+        }
+    }
+
+    private record Record(byte type, int seq, int offset, int length, String text) {
+    }
+
+    // Состояние ниже меняется только в потоке writer
+    private String name; // Имя файлов журнала в каталоге journal
+    private Path file;
+    private long baseSize;
+    private long baseModified;
+    private FileChannel channel;
+    private Arena arena;
+    private MemorySegment region; // Текущий отображенный кусок файла
+    private long regionStart;
+    private long position; // Конец последней записи
+    private long recordsStart;
+    private long baseBytes; // Размер основы: от него зависит, когда сворачивать журнал
+    private boolean unforced; // Есть записи, еще не сброшенные на диск
+    private boolean broken; // После ошибки записи журнал отключается до следующего сохранения
+    private volatile int savedSeq; // Последняя сохраненная правка
+
+    // file и его размер/время изменения на момент загрузки в редактор; null - новый файл
+    private EditJournal(String name, Path file, long baseSize, long baseModified) {
+        this.name = name;
+        this.file = file;
+        this.baseSize = baseSize;
+        this.baseModified = baseModified;
+        this.baseBytes = baseSize;
+    }
+
+    static EditJournal forFile(Path file, long size, long modified) {
+        return new EditJournal(AppData.key(file), file, size, modified);
+    }
+
+    static EditJournal untitled() {
+        return new EditJournal("untitled-" + UUID.randomUUID(), null, 0, 0);
+    }
+
+    // Журнал восстановленного буфера: его текст становится снимком-основой с номером правки 0,
+    // так что повторный сбой до сохранения ничего не теряет
+    static EditJournal restore(Recovered recovered) {
+        EditJournal journal = new EditJournal(recovered.name(), recovered.file(), 0, 0);
+        writer.execute(() -> {
+            try {
+                journal.startOnSnapshot(recovered.text(), 0);
+            } catch (IOException | RuntimeException e) {
+                journal.broken = true;
+                logger.log(Level.SEVERE, "An exception occurred", e);
+            }
+        });
+        return journal;
+    }
+
+    static {
+        writer.scheduleWithFixedDelay(EditJournal::forceAll, FORCE_INTERVAL_MS, FORCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Вызывать в EDT сразу после правки номер seq
+    void inserted(int seq, int offset, String text) {
+        writer.execute(() -> append(new Record(INSERT, seq, offset, text.length(), text)));
+    }
+
+    void removed(int seq, int offset, int length) {
+        writer.execute(() -> append(new Record(REMOVE, seq, offset, length, null)));
+    }
+
+    // Правки до seq включительно сохранены в target: журнал перестраивается на файл как основу,
+    // в нем остаются только правки, сделанные после снимка для сохранения
+    void saved(int seq, Path target) {
+        savedSeq = Math.max(savedSeq, seq);
+        writer.execute(() -> rebase(target));
+    }
+
+    // Буфер закрыт без сохранения: журнал больше не нужен. Если под тем же именем уже пишет
+    // другой журнал (восстановленный буфер того же файла), его файлы не трогаются
+    void discard() {
+        writer.execute(() -> {
+            close();
+            if (!inUse(name)) deleteFiles(name);
+        });
+    }
+
+    private void append(Record record) {
+        if (broken) return;
+        try {
+            if (channel == null) {
+                start(journalPath(name), BASE_FILE, 0);
+            }
+            write(record);
+            if (position - recordsStart > Math.max(COMPACT_MIN_BYTES, baseBytes * 2)) {
+                compact(record.seq());
+            }
+        } catch (IOException | RuntimeException e) {
+            broken = true;
+            logger.log(Level.SEVERE, "An exception occurred", e);
+        }
+    }
+
+    // Создает файл журнала заново, с заголовком, описывающим основу
+    private void start(Path journal, byte baseKind, int baseSeq) throws IOException {
+        close();
+        byte[] path = file != null ? file.toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        arena = Arena.ofConfined();
+        regionStart = 0;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE, arena);
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, 0, MAGIC);
+        region.set(ValueLayout.JAVA_BYTE, 4, baseKind);
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, 5, baseSeq);
+        region.set(ValueLayout.JAVA_LONG_UNALIGNED, 9, baseSize);
+        region.set(ValueLayout.JAVA_LONG_UNALIGNED, 17, baseModified);
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, 25, path.length);
+        MemorySegment.copy(path, 0, region, ValueLayout.JAVA_BYTE, 29, path.length);
+        position = recordsStart = 29 + path.length;
+        open.add(this);
+    }
+
+    private void write(Record record) throws IOException {
+        int payload = PAYLOAD_HEADER + (record.type() == INSERT ? record.length() * 2 : 0);
+        reserve(RECORD_HEADER + payload + 4L); // + место под нулевую длину, которой заканчивается журнал
+        long at = position - regionStart;
+        region.set(ValueLayout.JAVA_BYTE, at + 8, record.type());
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, at + 9, record.seq());
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, at + 13, record.offset());
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, at + 17, record.length());
+        if (record.type() == INSERT) {
+            char[] chunk = new char[Math.min(COPY_CHUNK, record.length())];
+            for (int i = 0; i < record.length(); i += chunk.length) {
+                int n = Math.min(chunk.length, record.length() - i);
+                record.text().getChars(i, i + n, chunk, 0);
+                MemorySegment.copy(chunk, 0, region, ValueLayout.JAVA_CHAR_UNALIGNED, at + 21 + i * 2L, n);
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(region.asSlice(at + 8, payload).asByteBuffer());
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, at + 4, (int) crc.getValue());
+        region.set(ValueLayout.JAVA_INT_UNALIGNED, at, payload); // Длина последней: недописанная запись читается как конец
+        position += RECORD_HEADER + payload;
+        unforced = true;
+    }
+
+    // Отображает новый кусок файла, если запись не помещается в текущий; куски идут встык
+    private void reserve(long bytes) throws IOException {
+        if (position + bytes <= regionStart + region.byteSize()) return;
+        region.force(); // Записи прошлого куска иначе не сбрасывались бы до закрытия журнала
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, bytes), arena);
+    }
+
+    // Сворачивает основу и записи в снимок и начинает журнал заново поверх него. Выполняется
+    // в потоке writer, поэтому новые правки просто ждут в очереди и не задерживают ввод
+    private void compact(int seq) throws IOException {
+        long started = System.nanoTime();
+        region.force();
+        Path journal = journalPath(name);
+        Recovered recovered = read(journal);
+        if (recovered == null) throw new IOException("Cannot replay journal " + journal);
+        startOnSnapshot(recovered.text(), seq);
+        logger.info(String.format("Compacted journal %s into a %,d byte snapshot in %.0f ms", name, baseBytes,
+                (System.nanoTime() - started) / 1_000_000.0));
+    }
+
+    // Новый журнал пишется рядом и заменяет старый одним переносом: после сбоя на диске будет
+    // либо старый журнал со старой основой, либо новый со снимком
+    private void startOnSnapshot(String text, int seq) throws IOException {
+        Path journal = journalPath(name);
+        Path snapshot = snapshotPath(name, seq);
+        SaveEngine.writeAtomically(snapshot, CharBuffer.wrap(text), StandardCharsets.UTF_8);
+        close();
+        baseSize = Files.size(snapshot);
+        baseModified = 0;
+        baseBytes = baseSize;
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        start(temp, BASE_SNAPSHOT, seq);
+        close();
+        SaveEngine.commit(temp, journal);
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(journal.getParent(), name + ".*.snapshot")) {
+            for (Path old : snapshots) {
+                if (!old.equals(snapshot)) Files.deleteIfExists(old);
+            }
+        }
+        reopen(journal);
+    }
+
+    // Открывает существующий журнал для дозаписи после последней записи
+    private void reopen(Path journal) throws IOException {
+        channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        arena = Arena.ofConfined();
+        regionStart = 0;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), REGION_SIZE), arena);
+        position = recordsStart = 29 + region.get(ValueLayout.JAVA_INT_UNALIGNED, 25);
+        open.add(this);
+    }
+
+    private void rebase(Path target) {
+        int seq = savedSeq;
+        try {
+            List<Record> pending = new ArrayList<>();
+            if (channel != null) {
+                region.force();
+                Parsed parsed = parse(journalPath(name));
+                if (parsed != null && parsed.baseSeq() > seq) {
+                    return; // Журнал уже свернут в снимок новее сохранения: он остается основой
+                }
+                if (parsed != null) {
+                    for (Record record : parsed.records()) {
+                        if (record.seq() > seq) pending.add(record);
+                    }
+                }
+            }
+            close();
+            deleteFiles(name);
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            name = AppData.key(target);
+            file = target;
+            baseSize = attributes.size();
+            baseModified = attributes.lastModifiedTime().toMillis();
+            baseBytes = baseSize;
+            broken = false;
+            for (Record record : pending) {
+                append(record);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "An exception occurred", e);
+        }
+    }
+
+    private void close() {
+        if (channel == null) return;
+        open.remove(this);
+        try {
+            region.force();
+            arena.close();
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "An exception occurred", e);
+        }
+        channel = null;
+        arena = null;
+        region = null;
+    }
+
+    // Исключение здесь отменило бы периодическую задачу навсегда, поэтому оно только записывается
+    private static void forceAll() {
+        for (EditJournal journal : open) {
+            if (!journal.unforced) continue;
+            try {
+                journal.region.force();
+                journal.unforced = false;
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "An exception occurred", e);
+            }
+        }
+    }
+
+    // Восстановление после сбоя: журналы, оставшиеся от прошлого запуска. Вызывать вне EDT
+    static List<Recovered> recoverAll() throws IOException {
+        List<Recovered> recovered = new ArrayList<>();
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(AppData.directory("journal"), "*.journal")) {
+            for (Path journal : journals) {
+                Recovered buffer = read(journal);
+                if (buffer != null) {
+                    recovered.add(buffer);
+                } else {
+                    // Каждый журнал занимает не меньше REGION_SIZE: без удаления такие копились бы вечно
+                    logger.warning("Journal cannot be replayed, its base changed on disk, deleting it: " + journal);
+                    String fileName = journal.getFileName().toString();
+                    delete(fileName.substring(0, fileName.length() - ".journal".length()));
+                }
+            }
+        }
+        return recovered;
+    }
+
+    // Удаляет журнал и снимки буфера после восстановления или отказа от него. Журнал, который
+    // открытая вкладка уже пишет под этим именем, остается: он заменил файлы прошлого запуска
+    static void delete(String name) {
+        writer.execute(() -> {
+            if (!inUse(name)) deleteFiles(name);
+        });
+    }
+
+    private static boolean inUse(String name) {
+        for (EditJournal journal : open) {
+            if (journal.name.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private record Parsed(String name, Path file, byte baseKind, int baseSeq, long baseSize, long baseModified,
+                          List<Record> records) {
+    }
+
+    private static Recovered read(Path journal) throws IOException {
+        Parsed parsed = parse(journal);
+        if (parsed == null) return null;
+        String base;
+        if (parsed.baseKind() == BASE_SNAPSHOT) {
+            Path snapshot = snapshotPath(parsed.name(), parsed.baseSeq());
+            if (!Files.exists(snapshot)) return null;
+            base = TextFileReader.read(snapshot, StandardCharsets.UTF_8, _ -> {
+            });
+        } else if (parsed.file() == null) {
+            base = "";
+        } else {
+            if (!Files.isRegularFile(parsed.file())) return null;
+            BasicFileAttributes attributes = Files.readAttributes(parsed.file(), BasicFileAttributes.class);
+            if (attributes.size() != parsed.baseSize()
+                    || attributes.lastModifiedTime().toMillis() != parsed.baseModified()) {
+                return null; // Файл изменен не этим редактором: правки не к чему применить
+            }
+            base = TextFileReader.read(parsed.file(), StandardCharsets.UTF_8, _ -> {
+            });
+        }
+        GapBuffer text = new GapBuffer(base);
+        for (Record record : parsed.records()) {
+            if (!text.apply(record)) {
+                logger.warning("Journal " + journal + " is inconsistent at edit " + record.seq());
+                break;
+            }
+        }
+        return new Recovered(parsed.name(), parsed.file(), text.toString());
+    }
+
+    // Читает заголовок и все целые записи; чтение останавливается на первой нулевой
+    // или поврежденной записи (хвост, недописанный при сбое)
+    private static Parsed parse(Path journal) throws IOException {
+        String fileName = journal.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - ".journal".length());
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ); Arena arena = Arena.ofConfined()) {
+            long size = channel.size();
+            if (size < 29) return null;
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+            if (segment.get(ValueLayout.JAVA_INT_UNALIGNED, 0) != MAGIC) return null;
+            byte baseKind = segment.get(ValueLayout.JAVA_BYTE, 4);
+            int baseSeq = segment.get(ValueLayout.JAVA_INT_UNALIGNED, 5);
+            long baseSize = segment.get(ValueLayout.JAVA_LONG_UNALIGNED, 9);
+            long baseModified = segment.get(ValueLayout.JAVA_LONG_UNALIGNED, 17);
+            int pathLength = segment.get(ValueLayout.JAVA_INT_UNALIGNED, 25);
+            String path = new String(segment.asSlice(29, pathLength).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+            List<Record> records = new ArrayList<>();
+            long at = 29 + pathLength;
+            CRC32C crc = new CRC32C();
+            while (at + RECORD_HEADER + PAYLOAD_HEADER <= size) {
+                int payload = segment.get(ValueLayout.JAVA_INT_UNALIGNED, at);
+                if (payload < PAYLOAD_HEADER || at + RECORD_HEADER + payload > size) break;
+                crc.reset();
+                crc.update(segment.asSlice(at + 8, payload).asByteBuffer());
+                if ((int) crc.getValue() != segment.get(ValueLayout.JAVA_INT_UNALIGNED, at + 4)) break;
+                byte type = segment.get(ValueLayout.JAVA_BYTE, at + 8);
+                int seq = segment.get(ValueLayout.JAVA_INT_UNALIGNED, at + 9);
+                int offset = segment.get(ValueLayout.JAVA_INT_UNALIGNED, at + 13);
+                int length = segment.get(ValueLayout.JAVA_INT_UNALIGNED, at + 17);
+                String text = null;
+                if (type == INSERT) {
+                    text = new String(segment.asSlice(at + 21, length * 2L).toArray(ValueLayout.JAVA_CHAR_UNALIGNED));
+                }
+                records.add(new Record(type, seq, offset, length, text));
+                at += RECORD_HEADER + payload;
+            }
+            return new Parsed(name, path.isEmpty() ? null : Path.of(path), baseKind, baseSeq, baseSize, baseModified, records);
+        }
+    }
+
+    private static Path journalPath(String name) throws IOException {
+        return AppData.directory("journal").resolve(name + ".journal");
+    }
+
+    private static Path snapshotPath(String name, int seq) throws IOException {
+        return AppData.directory("journal").resolve(name + "." + seq + ".snapshot");
+    }
+
+    private static void deleteFiles(String name) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(AppData.directory("journal"), name + ".*")) {
+            for (Path path : files) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "An exception occurred", e);
+        }
+    }
+
+    // Текст с разрывом в месте последней правки: соседние правки при воспроизведении журнала
+    // сдвигают только символы между ними, а не весь текст
+    private static final class GapBuffer {
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        GapBuffer(String text) {
+            chars = new char[text.length() + 1024];
+            text.getChars(0, text.length(), chars, 0);
+            gapStart = text.length();
+            gapEnd = chars.length;
+        }
+
+        int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        boolean apply(Record record) {
+            if (record.offset() < 0 || record.offset() > length()) return false;
+            if (record.type() == INSERT) {
+                moveGap(record.offset());
+                ensureGap(record.length());
+                record.text().getChars(0, record.length(), chars, gapStart);
+                gapStart += record.length();
+                return true;
+            }
+            if (record.offset() + record.length() > length()) return false;
+            moveGap(record.offset());
+            gapEnd += record.length();
+            return true;
+        }
+
+        private void moveGap(int offset) {
+            if (offset < gapStart) {
+                int count = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - count, count);
+                gapStart -= count;
+                gapEnd -= count;
+            } else if (offset > gapStart) {
+                int count = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, count);
+                gapStart += count;
+                gapEnd += count;
+            }
+        }
+
+        private void ensureGap(int needed) {
+            if (gapEnd - gapStart >= needed) return;
+            int tail = chars.length - gapEnd;
+            char[] grown = new char[Math.max(chars.length * 2, length() + needed + 1024)];
+            System.arraycopy(chars, 0, grown, 0, gapStart);
+            System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+            gapEnd = grown.length - tail;
+            chars = grown;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(length());
+            text.append(chars, 0, gapStart).append(chars, gapEnd, chars.length - gapEnd);
+            return text.toString();
+        }
+    }
+}
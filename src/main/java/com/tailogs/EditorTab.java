@@ -0,0 +1,222 @@
+package com.tailogs;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rtextarea.RTextScrollPane;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Вкладка редактора: у каждого открытого файла своя текстовая область, а значит свой документ,
+// каретка и история отмены. Чистый документ неактивной вкладки может быть вытеснен из памяти
+final class EditorTab {
+    private static final Logger logger = Logger.getLogger(EditorTab.class.getName());
+    final RSyntaxTextArea area;
+    final RTextScrollPane scrollPane;
+    private final Runnable onEdit;
+    private File file; // null - новый несохраненный файл
+    private int edits; // Правок с момента открытия
+    private int savedEdits; // Значение edits на момент последнего сохранения
+    private boolean loaded; // Документ в памяти (false - еще не загружен или вытеснен)
+    private boolean wasLoaded; // Файл хотя бы раз был показан во вкладке
+    private int caret; // Позиция каретки вытесненного документа
+    private boolean preview; // Открыт проходом по дереву; следующий такой файл займет эту же вкладку
+    private FileProfile profile; // Оценка тяжести файла при последней загрузке
+    private FileProfile.Mode override; // Режим, выбранный пользователем; null - автоматически
+    private EditJournal journal; // Журнал правок для восстановления после сбоя
+    private boolean conflict; // Файл на диске изменен в обход буфера: сохранение затрет это изменение
+
+    EditorTab(File file, RSyntaxTextArea area, Runnable onEdit) {
+        this.file = file;
+        this.area = area;
+        this.onEdit = onEdit;
+        scrollPane = new RTextScrollPane(area);
+        loaded = file == null;
+        area.setEditable(loaded);
+        if (file == null) {
+            journal = EditJournal.untitled();
+        }
+        listen(area.getDocument());
+    }
+
+    File file() {
+        return file;
+    }
+
+    void setFile(File file) {
+        this.file = file;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    boolean isDirty() {
+        return edits != savedEdits;
+    }
+
+    int edits() {
+        return edits;
+    }
+
+    // Сохранено содержимое на момент правки номер edits
+    void saved(int edits) {
+        savedEdits = edits;
+        conflict = false;
+        if (journal != null && file != null) {
+            journal.saved(edits, file.toPath());
+        }
+    }
+
+    boolean isConflict() {
+        return conflict;
+    }
+
+    // Файл на диске заменен, пока буфер правили, и буфер остался без этих замен
+    void markConflict() {
+        conflict = true;
+    }
+
+    // Документ восстановлен из журнала и отличается от файла на диске
+    void recovered() {
+        savedEdits = -1;
+    }
+
+    // Символов в памяти
+    int length() {
+        return loaded ? area.getDocument().getLength() : 0;
+    }
+
+    // Подменяет документ загруженным с диска и возвращает каретку на прежнее место;
+    // дальнейшие правки пишутся в journal
+    void load(RSyntaxDocument document, EditJournal journal) {
+        setJournal(journal);
+        listen(document);
+        area.setDocument(document);
+        area.setCaretPosition(Math.min(caret, document.getLength()));
+        area.setEditable(true);
+        edits = 0;
+        savedEdits = 0;
+        conflict = false;
+        loaded = true;
+        wasLoaded = true;
+    }
+
+    boolean wasLoaded() {
+        return wasLoaded;
+    }
+
+    // Позиция каретки, в том числе у незагруженного документа
+    int caret() {
+        return loaded ? area.getCaretPosition() : caret;
+    }
+
+    // Каретка, на которую встанет документ после загрузки
+    void setCaret(int caret) {
+        if (!loaded) this.caret = caret;
+    }
+
+    // Пустая или предпросмотровая вкладка будет заполнена файлом, назначенным через setFile
+    void unload() {
+        setJournal(null);
+        loaded = false;
+        wasLoaded = false;
+        caret = 0;
+        area.setEditable(false);
+    }
+
+    FileProfile profile() {
+        return profile;
+    }
+
+    void setProfile(FileProfile profile) {
+        this.profile = profile;
+    }
+
+    FileProfile.Mode override() {
+        return override;
+    }
+
+    void setOverride(FileProfile.Mode override) {
+        this.override = override;
+    }
+
+    FileProfile.Mode mode() {
+        if (override != null) return override;
+        return profile != null ? profile.mode() : FileProfile.Mode.FULL;
+    }
+
+    boolean isPreview() {
+        return preview;
+    }
+
+    void setPreview(boolean preview) {
+        this.preview = preview;
+    }
+
+    // Освобождает память документа; при следующей активации файл перечитывается с диска
+    void evict() {
+        if (!loaded || isDirty()) return;
+        caret = area.getCaretPosition();
+        setJournal(null);
+        area.setDocument(new RSyntaxDocument(area.getSyntaxEditingStyle()));
+        area.setEditable(false);
+        loaded = false;
+    }
+
+    // Вкладка закрыта: несохраненные правки больше не восстанавливаются
+    void close() {
+        setJournal(null);
+    }
+
+    private void setJournal(EditJournal journal) {
+        if (this.journal != null && this.journal != journal) {
+            this.journal.discard();
+        }
+        this.journal = journal;
+    }
+
+    String title() {
+        String name = file != null ? file.getName() : "Untitled";
+        if (preview) return "<html><i>" + name + "</i></html>"; // Курсивом, как в других редакторах
+        if (conflict) return "!" + name;
+        return isDirty() ? "*" + name : name;
+    }
+
+    private void listen(javax.swing.text.Document document) {
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                edited();
+                if (journal == null) return;
+                try {
+                    journal.inserted(edits, e.getOffset(), e.getDocument().getText(e.getOffset(), e.getLength()));
+                } catch (BadLocationException ex) {
+                    logger.log(Level.SEVERE, "An exception occurred", ex);
+                }
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                edited();
+                if (journal != null) {
+                    journal.removed(edits, e.getOffset(), e.getLength());
+                }
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    private void edited() {
+        preview = false; // Правка закрепляет вкладку
+        edits++;
+        onEdit.run();
+    }
+}
@@ -0,0 +1,89 @@
+package com.tailogs;
+
+import javax.swing.*;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Сторож EDT: периодически ставит в очередь событий пустую задачу и ждет, пока EDT ее выполнит.
+// Если ожидание дольше порога, EDT занят чем-то тяжелым: его стек снимается в этот момент,
+// а после отпускания EDT зависание пишется в лог, в гистограмму Metrics.EDT_STALL и в JFR
+final class EdtWatchdog {
+    private static final long CHECK_INTERVAL_MS = 100;
+    private static final int MAX_RECENT = 20; // Сколько последних зависаний хранится для диагностики
+    private static final Logger logger = Logger.getLogger(EdtWatchdog.class.getName());
+
+    record Stall(LocalTime at, long nanos, String stackTrace) {
+    }
+
+    private final long thresholdNanos;
+    private final Deque<Stall> recent = new ArrayDeque<>(); // Защищен собой
+    private volatile Thread edt;
+
+    EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    void start() {
+        Thread.ofVirtual().name("edt-watchdog").start(this::run);
+    }
+
+    // Последние зависания, новые первыми
+    List<Stall> recentStalls() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                long posted = System.nanoTime();
+                CountDownLatch processed = new CountDownLatch(1);
+                SwingUtilities.invokeLater(() -> {
+                    edt = Thread.currentThread();
+                    processed.countDown();
+                });
+                if (!processed.await(thresholdNanos, TimeUnit.NANOSECONDS)) {
+                    String stackTrace = edtStackTrace(); // Снимается, пока EDT еще занят
+                    processed.await();
+                    stalled(System.nanoTime() - posted, stackTrace);
+                }
+                Thread.sleep(CHECK_INTERVAL_MS);
+            }
+        } catch (InterruptedException e) {
+            // Сторож остановлен
+        }
+    }
+
+    private void stalled(long nanos, String stackTrace) {
+        Metrics.record(Metrics.EDT_STALL, nanos);
+        Metrics.EdtStallEvent event = new Metrics.EdtStallEvent();
+        if (event.shouldCommit()) {
+            event.stall = nanos;
+            event.stackTrace = stackTrace;
+            event.commit();
+        }
+        synchronized (recent) {
+            recent.addFirst(new Stall(LocalTime.now(), nanos, stackTrace));
+            if (recent.size() > MAX_RECENT) recent.removeLast();
+        }
+        logger.log(Level.WARNING, String.format("EDT stalled for %.0f ms%n%s", nanos / 1_000_000.0, stackTrace));
+    }
+
+    private String edtStackTrace() {
+        Thread thread = edt;
+        if (thread == null) return "";
+        StringBuilder text = new StringBuilder();
+        for (StackTraceElement element : thread.getStackTrace()) {
+            text.append("    at ").append(element).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.tailogs;
+
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.fife.ui.rsyntaxtextarea.TokenMaker;
+import org.fife.ui.rsyntaxtextarea.TokenMakerFactory;
+import org.fife.ui.rsyntaxtextarea.TokenTypes;
+
+import javax.swing.text.Segment;
+
+// Оценка того, насколько файл тяжел для редактора: размер, самая длинная строка и стоимость
+// разбора на токены, измеренная на начале файла. По ней выбирается режим редактирования
+record FileProfile(int length, int maxLine, double scanMillis, Mode mode, String reason) {
+    // FULL - подсветка, свертка и подсветка пар скобок; REDUCED - подсветка только видимых строк,
+    // без свертки (ее разбор проходит весь документ на каждое нажатие); PLAIN - простой текст
+    enum Mode {
+        FULL("Full"), REDUCED("Reduced"), PLAIN("Plain");
+
+        final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+    }
+
+    // Пороги, выше которых режим понижается автоматически
+    static final long SIZE_THRESHOLD = Long.getLong("blackparticle.degraded.size", 4L << 20); // Символов
+    static final int LINE_THRESHOLD = Integer.getInteger("blackparticle.degraded.maxLine", 5000); // Символов в строке
+    static final long SCAN_THRESHOLD_MS = Long.getLong("blackparticle.degraded.scanMs", 250); // Оценка полного разбора
+    private static final int SAMPLE_CHARS = 128 * 1024;
+
+    static FileProfile measure(String text, String syntaxStyle) {
+        int length = text.length();
+        int maxLine = 0;
+        int lineStart = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            maxLine = Math.max(maxLine, i - lineStart);
+            lineStart = i + 1;
+        }
+        maxLine = Math.max(maxLine, length - lineStart);
+        if (maxLine > LINE_THRESHOLD) {
+            // Разбор такой строки сам по себе долгий, его стоимость уже не важна
+            return new FileProfile(length, maxLine, 0, Mode.PLAIN, String.format("line of %,d chars", maxLine));
+        }
+        double scanMillis = estimateScanMillis(text, syntaxStyle);
+
+        if (scanMillis > SCAN_THRESHOLD_MS * 4) {
+            return new FileProfile(length, maxLine, scanMillis, Mode.PLAIN, String.format("tokenizing ~%.0f ms", scanMillis));
+        }
+        if (scanMillis > SCAN_THRESHOLD_MS) {
+            return new FileProfile(length, maxLine, scanMillis, Mode.REDUCED, String.format("tokenizing ~%.0f ms", scanMillis));
+        }
+        if (length > SIZE_THRESHOLD) {
+            return new FileProfile(length, maxLine, scanMillis, Mode.REDUCED,
+                    String.format("%.1f M chars", length / (1024.0 * 1024.0)));
+        }
+        return new FileProfile(length, maxLine, scanMillis, Mode.FULL, "");
+    }
+
+    // Разбирает начало файла тем же способом, что и RSyntaxDocument при вставке текста,
+    // и переносит измеренную скорость на весь файл. Первый проход в основном прогревает
+    // разборщик, поэтому берется лучший из двух
+    private static double estimateScanMillis(String text, String syntaxStyle) {
+        if (SyntaxConstants.SYNTAX_STYLE_NONE.equals(syntaxStyle) || text.isEmpty()) return 0;
+        TokenMaker tokenMaker = TokenMakerFactory.getDefaultInstance().getTokenMaker(syntaxStyle);
+        int sampleEnd = Math.min(text.length(), SAMPLE_CHARS);
+        char[] sample = text.substring(0, sampleEnd).toCharArray();
+        double sampleMillis = Math.min(scan(tokenMaker, sample), scan(tokenMaker, sample));
+        return sampleMillis * text.length() / sampleEnd;
+    }
+
+    private static double scan(TokenMaker tokenMaker, char[] sample) {
+        Segment segment = new Segment();
+        int tokenType = TokenTypes.NULL;
+        long started = System.nanoTime();
+        int lineStart = 0;
+        while (lineStart < sample.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < sample.length && sample[lineEnd] != '\n') lineEnd++;
+            segment.array = sample;
+            segment.offset = lineStart;
+            segment.count = lineEnd - lineStart;
+            tokenType = tokenMaker.getLastTokenTypeOnLine(segment, tokenType);
+            lineStart = lineEnd + 1;
+        }
+        return (System.nanoTime() - started) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,125 @@
+package com.tailogs;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// Панель поиска по файлам проекта. Кандидаты берутся из триграммного индекса, проверяются
+// параллельно, а найденные строки появляются в списке по мере нахождения
+class FindInFilesPanel extends JPanel {
+    private static final int MAX_HITS = 10_000;
+    private static final int MAX_HITS_PER_FILE = 100;
+
+    private final JTextField queryField = new JTextField();
+    private final JLabel summaryLabel = new JLabel("Open a catalog to search in files");
+    private final DefaultListModel<TrigramIndex.Hit> results = new DefaultListModel<>();
+    private final JList<TrigramIndex.Hit> resultList = new JList<>(results);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile TrigramIndex index;
+    private Future<?> search;
+    private volatile int generation; // Меняется только в EDT
+
+    // opener получает файл и номер строки (с единицы)
+    FindInFilesPanel(BiConsumer<Path, Integer> opener) {
+        super(new BorderLayout());
+        JPanel top = new JPanel(new BorderLayout());
+        top.add(new JLabel(" Find: "), BorderLayout.WEST);
+        top.add(queryField, BorderLayout.CENTER);
+        top.add(summaryLabel, BorderLayout.SOUTH);
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(resultList), BorderLayout.CENTER);
+
+        resultList.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        resultList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                TrigramIndex.Hit hit = (TrigramIndex.Hit) value;
+                TrigramIndex current = FindInFilesPanel.this.index;
+                Path shown = current != null ? current.root().relativize(hit.file()) : hit.file();
+                return super.getListCellRendererComponent(list, shown + ":" + hit.line() + ": " + hit.text(),
+                        index, isSelected, cellHasFocus);
+            }
+        });
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                TrigramIndex.Hit hit = resultList.getSelectedValue();
+                if (hit != null) opener.accept(hit.file(), hit.line());
+            }
+        });
+        resultList.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "openHit");
+        resultList.getActionMap().put("openHit", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                TrigramIndex.Hit hit = resultList.getSelectedValue();
+                if (hit != null) opener.accept(hit.file(), hit.line());
+            }
+        });
+        queryField.addActionListener(_ -> search(queryField.getText()));
+    }
+
+    void focusQuery() {
+        queryField.requestFocusInWindow();
+        queryField.selectAll();
+    }
+
+    void indexing(Path root) {
+        index = null;
+        summaryLabel.setText("Indexing " + root + "…");
+    }
+
+    void setIndex(TrigramIndex index, long buildMillis) {
+        this.index = index;
+        summaryLabel.setText(index.fileCount() + " files indexed in " + buildMillis + " ms");
+    }
+
+    private void search(String query) {
+        if (search != null) {
+            search.cancel(true);
+        }
+        int searchGeneration = ++generation;
+        results.clear();
+        TrigramIndex current = index;
+        if (current == null || query.isEmpty()) return;
+        long started = System.nanoTime();
+        search = executor.submit(() -> {
+            List<Path> candidates = current.candidates(query);
+            long candidatesMicros = (System.nanoTime() - started) / 1000;
+            AtomicInteger total = new AtomicInteger();
+            AtomicInteger matchedFiles = new AtomicInteger();
+            candidates.parallelStream().forEach(file -> {
+                if (Thread.currentThread().isInterrupted() || total.get() >= MAX_HITS || searchGeneration != generation) {
+                    return;
+                }
+                List<TrigramIndex.Hit> hits = TrigramIndex.findInFile(file, query, MAX_HITS_PER_FILE);
+                if (hits.isEmpty()) return;
+                total.addAndGet(hits.size());
+                matchedFiles.incrementAndGet();
+                List<TrigramIndex.Hit> batch = new ArrayList<>(hits);
+                SwingUtilities.invokeLater(() -> {
+                    if (searchGeneration == generation) results.addAll(batch);
+                });
+            });
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            int skipped = current.skippedCount();
+            SwingUtilities.invokeLater(() -> {
+                if (searchGeneration != generation) return;
+                summaryLabel.setText(String.format("%d matches in %d files | %d candidates of %d files in %.2f ms | total %d ms%s",
+                        total.get(), matchedFiles.get(), candidates.size(), current.fileCount(),
+                        candidatesMicros / 1000.0, millis, skipped > 0 ? " | " + skipped + " skipped (too large)" : ""));
+            });
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package com.tailogs;
+
+import java.util.Comparator;
+
+// Нечеткое сопоставление по подпоследовательности: все символы запроса должны встретиться
+// по порядку. Очки начисляются за подряд идущие совпадения, начала слов и совпадения в имени
+final class FuzzyMatcher {
+    static final int NO_MATCH = Integer.MIN_VALUE;
+    // При равных очках выше тот, кто раньше в индексе
+    static final Comparator<Match> BY_SCORE = Comparator.comparingInt(Match::score)
+            .thenComparing(Comparator.comparingInt(Match::id).reversed());
+
+    record Match(int id, int score) {
+    }
+
+    private static final int CONSECUTIVE_BONUS = 5;
+    private static final int WORD_START_BONUS = 8;
+    private static final int CAMEL_BONUS = 6;
+    private static final int NAME_BONUS = 2;
+    private static final int NAME_ONLY_BONUS = 20; // Запрос целиком нашелся в имени файла
+    private static final int WORD_END_BONUS = 10; // Совпадение заканчивается на границе слова
+
+    private FuzzyMatcher() {
+    }
+
+    static char[] pattern(String query) {
+        char[] pattern = query.strip().toCharArray();
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = lower(pattern[i]);
+        }
+        return pattern;
+    }
+
+    // Оценка text[from, to) с именем, начинающимся с nameStart; NO_MATCH, если совпадения нет
+    static int score(char[] text, int from, int to, int nameStart, char[] pattern) {
+        int whole = greedy(text, from, to, from, nameStart, pattern);
+        if (whole == NO_MATCH) return NO_MATCH;
+        int name = greedy(text, nameStart, to, from, nameStart, pattern);
+        int best = name == NO_MATCH ? whole : Math.max(whole, name + NAME_ONLY_BONUS);
+        return best - (to - from) / 8; // При равных совпадениях короче путь - выше
+    }
+
+    private static int greedy(char[] text, int from, int to, int pathStart, int nameStart, char[] pattern) {
+        if (to - from < pattern.length) return NO_MATCH;
+        int p = 0;
+        int score = 0;
+        int previous = -2;
+        for (int i = from; i < to && p < pattern.length; i++) {
+            char c = text[i];
+            if (lower(c) != pattern[p]) continue;
+            int points = 1;
+            if (i == previous + 1) points += CONSECUTIVE_BONUS;
+            if (i == pathStart || isSeparator(text[i - 1])) {
+                points += WORD_START_BONUS;
+            } else if (Character.isUpperCase(c) && Character.isLowerCase(text[i - 1])) {
+                points += CAMEL_BONUS;
+            }
+            if (i >= nameStart) points += NAME_BONUS;
+            score += points;
+            previous = i;
+            p++;
+        }
+        if (p < pattern.length) return NO_MATCH;
+        if (previous + 1 == to || isSeparator(text[previous + 1])) score += WORD_END_BONUS;
+        return score;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '_' || c == '-' || c == '.' || c == ' ';
+    }
+
+    private static char lower(char c) {
+        if (c < 128) return (c >= 'A' && c <= 'Z') ? (char) (c | 0x20) : c;
+        return Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,148 @@
+package com.tailogs;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+// Общая часть диалогов нечеткого выбора (быстрое открытие, переход к символу): поле запроса и список.
+// Ранжирование идет вне EDT на каждое нажатие клавиши, устаревшие запросы отменяются, как только
+// пользователь продолжает печатать. I - индекс, по которому идет поиск, M - одно совпадение
+abstract class FuzzyPickerDialog<I, M> extends JDialog {
+    private static final int MAX_RESULTS = 50;
+
+    private final JTextField queryField = new JTextField();
+    private final DefaultListModel<String> results = new DefaultListModel<>();
+    private final JList<String> resultList = new JList<>(results);
+    private final JLabel summaryLabel = new JLabel(" ");
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile I index;
+    private volatile int generation; // Меняется только в EDT
+    private Future<?> ranking;
+    private I ranked; // Индекс, из которого взяты matches
+    private List<M> matches = List.of();
+
+    FuzzyPickerDialog(Frame owner, String title, int width) {
+        super(owner, title, false);
+        JPanel content = new JPanel(new BorderLayout());
+        content.add(queryField, BorderLayout.NORTH);
+        content.add(new JScrollPane(resultList), BorderLayout.CENTER);
+        content.add(summaryLabel, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(width, 400);
+        setLocationRelativeTo(owner);
+
+        queryField.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        resultList.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        resultList.setFocusable(false);
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                rank();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                rank();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        bind(KeyEvent.VK_DOWN, "next", () -> moveSelection(1));
+        bind(KeyEvent.VK_UP, "previous", () -> moveSelection(-1));
+        bind(KeyEvent.VK_ENTER, "open", this::openSelected);
+        bind(KeyEvent.VK_ESCAPE, "close", () -> setVisible(false));
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) openSelected();
+            }
+        });
+    }
+
+    // Поиск и подписи строк вызываются вне EDT, open - в EDT после закрытия диалога
+    abstract List<M> search(I index, String query, int limit, BooleanSupplier cancelled);
+
+    abstract String describe(I index, M match);
+
+    abstract String summary(I index, int found, double millis);
+
+    abstract void open(I index, M match);
+
+    void setIndex(I index) {
+        this.index = index;
+        if (isVisible()) rank();
+    }
+
+    void showDialog() {
+        setVisible(true);
+        queryField.requestFocusInWindow();
+        queryField.selectAll();
+        rank();
+    }
+
+    private void rank() {
+        if (ranking != null) {
+            ranking.cancel(true);
+        }
+        int rankGeneration = ++generation;
+        I current = index;
+        String query = queryField.getText();
+        if (current == null) {
+            summaryLabel.setText("Open a catalog first");
+            return;
+        }
+        ranking = executor.submit(() -> {
+            long started = System.nanoTime();
+            List<M> found = search(current, query, MAX_RESULTS, () -> rankGeneration != generation);
+            double millis = (System.nanoTime() - started) / 1_000_000.0;
+            String[] rows = found.stream().map(match -> describe(current, match)).toArray(String[]::new);
+            SwingUtilities.invokeLater(() -> {
+                if (rankGeneration != generation) return; // Пользователь уже ввел следующий символ
+                ranked = current;
+                matches = found;
+                results.clear();
+                for (String row : rows) {
+                    results.addElement(row);
+                }
+                if (!results.isEmpty()) resultList.setSelectedIndex(0);
+                summaryLabel.setText(summary(current, found.size(), millis));
+            });
+        });
+    }
+
+    private void moveSelection(int delta) {
+        if (results.isEmpty()) return;
+        int index = Math.max(0, Math.min(results.size() - 1, resultList.getSelectedIndex() + delta));
+        resultList.setSelectedIndex(index);
+        resultList.ensureIndexIsVisible(index);
+    }
+
+    private void openSelected() {
+        int selected = resultList.getSelectedIndex();
+        if (selected < 0 || selected >= matches.size()) return;
+        setVisible(false);
+        open(ranked, matches.get(selected));
+    }
+
+    private void bind(int key, String name, Runnable action) {
+        queryField.getInputMap().put(KeyStroke.getKeyStroke(key, 0), name);
+        queryField.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+}
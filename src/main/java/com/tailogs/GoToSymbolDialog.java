@@ -0,0 +1,40 @@
+package com.tailogs;
+
+import java.awt.*;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+// Переход к объявлению по имени (Ctrl+T). Как и быстрое открытие файла, ранжирует по готовой
+// таблице символов, не читая файлы
+class GoToSymbolDialog extends FuzzyPickerDialog<SymbolIndex, SymbolIndex.Symbol> {
+    private final BiConsumer<Path, Integer> opener;
+
+    // opener получает файл и номер строки (с единицы)
+    GoToSymbolDialog(Frame owner, BiConsumer<Path, Integer> opener) {
+        super(owner, "Go to symbol", 700);
+        this.opener = opener;
+    }
+
+    @Override
+    List<SymbolIndex.Symbol> search(SymbolIndex index, String query, int limit, BooleanSupplier cancelled) {
+        return index.search(query, limit, cancelled);
+    }
+
+    @Override
+    String describe(SymbolIndex index, SymbolIndex.Symbol symbol) {
+        return String.format("%-8s %s  %s:%d", symbol.kind().label, symbol.qualifiedName(),
+                index.root().relativize(symbol.file()), symbol.line());
+    }
+
+    @Override
+    String summary(SymbolIndex index, int found, double millis) {
+        return String.format("%d of %d symbols ranked in %.1f ms", found, index.symbolCount(), millis);
+    }
+
+    @Override
+    void open(SymbolIndex index, SymbolIndex.Symbol symbol) {
+        opener.accept(symbol.file(), symbol.line());
+    }
+}
@@ -0,0 +1,157 @@
+package com.tailogs;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+
+// Просмотрщик очень больших файлов только для чтения. Рисует лишь видимые строки из MappedTextFile,
+// поэтому прокрутка и переход к строке не зависят от размера файла
+class LargeFileViewer extends JPanel {
+    private static final int GUTTER_PADDING = 8;
+
+    private final MappedTextFile file;
+    private final JScrollBar verticalBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JScrollBar horizontalBar = new JScrollBar(JScrollBar.HORIZONTAL, 0, 1, 0, MappedTextFile.MAX_LINE_BYTES);
+    private final LinesView view = new LinesView();
+    private Color gutterBackground = new Color(30, 30, 30);
+    private Color gutterForeground = Color.LIGHT_GRAY;
+
+    LargeFileViewer(MappedTextFile file, Font font) {
+        super(new BorderLayout());
+        this.file = file;
+        view.setFont(font);
+        view.setFocusable(true);
+        add(view, BorderLayout.CENTER);
+        add(verticalBar, BorderLayout.EAST);
+        add(horizontalBar, BorderLayout.SOUTH);
+
+        verticalBar.addAdjustmentListener(_ -> view.repaint());
+        horizontalBar.addAdjustmentListener(_ -> view.repaint());
+        view.addMouseWheelListener(e -> scrollBy(e.getWheelRotation() * 3L));
+        view.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateScrollBars();
+            }
+        });
+
+        bind(KeyEvent.VK_UP, 0, "lineUp", () -> scrollBy(-1));
+        bind(KeyEvent.VK_DOWN, 0, "lineDown", () -> scrollBy(1));
+        bind(KeyEvent.VK_PAGE_UP, 0, "pageUp", () -> scrollBy(-visibleLines()));
+        bind(KeyEvent.VK_PAGE_DOWN, 0, "pageDown", () -> scrollBy(visibleLines()));
+        bind(KeyEvent.VK_HOME, InputEvent.CTRL_DOWN_MASK, "fileStart", () -> goToLine(1));
+        bind(KeyEvent.VK_END, InputEvent.CTRL_DOWN_MASK, "fileEnd", () -> goToLine(file.lineCount()));
+        bind(KeyEvent.VK_LEFT, 0, "scrollLeft", () -> horizontalBar.setValue(horizontalBar.getValue() - 4));
+        bind(KeyEvent.VK_RIGHT, 0, "scrollRight", () -> horizontalBar.setValue(horizontalBar.getValue() + 4));
+        bind(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK, "goToLine", this::askLine);
+        updateScrollBars();
+    }
+
+    MappedTextFile file() {
+        return file;
+    }
+
+    void setColors(Color background, Color foreground, Color gutterBackground, Color gutterForeground) {
+        view.setBackground(background);
+        view.setForeground(foreground);
+        this.gutterBackground = gutterBackground;
+        this.gutterForeground = gutterForeground;
+        view.repaint();
+    }
+
+    // Номер строки считается с единицы, как в редакторе
+    void goToLine(long line) {
+        long target = Math.max(0, Math.min(line - 1, file.lineCount() - 1));
+        verticalBar.setValue((int) Math.min(target, Integer.MAX_VALUE));
+    }
+
+    // Вызывается по мере индексации, чтобы прокрутка охватывала уже найденные строки
+    void updateScrollBars() {
+        int visible = Math.max(1, visibleLines());
+        int lines = (int) Math.min(file.lineCount(), Integer.MAX_VALUE - visible);
+        verticalBar.setValues(Math.min(verticalBar.getValue(), lines), visible, 0, lines + visible - 1);
+        verticalBar.setBlockIncrement(visible);
+        view.repaint();
+    }
+
+    void focusView() {
+        view.requestFocusInWindow();
+    }
+
+    private void askLine() {
+        String input = JOptionPane.showInputDialog(this, "Go to line (1 - " + file.lineCount() + "):");
+        if (input == null) return;
+        try {
+            goToLine(Long.parseLong(input.trim()));
+        } catch (NumberFormatException e) {
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }
+
+    private void scrollBy(long lines) {
+        long target = Math.max(0, Math.min(verticalBar.getValue() + lines, verticalBar.getMaximum()));
+        verticalBar.setValue((int) target);
+    }
+
+    private int visibleLines() {
+        int lineHeight = view.getFontMetrics(view.getFont()).getHeight();
+        return Math.max(1, view.getHeight() / lineHeight);
+    }
+
+    private void bind(int key, int modifiers, String name, Runnable action) {
+        view.getInputMap(WHEN_FOCUSED).put(KeyStroke.getKeyStroke(key, modifiers), name);
+        view.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    private class LinesView extends JComponent {
+        LinesView() {
+            setOpaque(true);
+            setBackground(new Color(30, 30, 30));
+            setForeground(Color.LIGHT_GRAY);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            FontMetrics metrics = g2.getFontMetrics(getFont());
+            int lineHeight = metrics.getHeight();
+            long first = verticalBar.getValue();
+            long last = Math.min(file.lineCount(), first + getHeight() / lineHeight + 1);
+            int gutterWidth = metrics.stringWidth(Long.toString(Math.max(last, 1))) + GUTTER_PADDING * 2;
+            int charWidth = metrics.charWidth('m');
+            int shift = horizontalBar.getValue();
+
+            g2.setColor(getBackground());
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.setColor(gutterBackground);
+            g2.fillRect(0, 0, gutterWidth, getHeight());
+
+            g2.setFont(getFont());
+            int y = metrics.getAscent();
+            for (long line = first; line < last; line++, y += lineHeight) {
+                String number = Long.toString(line + 1);
+                g2.setColor(gutterForeground);
+                g2.drawString(number, gutterWidth - GUTTER_PADDING - metrics.stringWidth(number), y);
+
+                String text = file.line(line);
+                if (shift < text.length()) {
+                    g2.setColor(getForeground());
+                    Shape clip = g2.getClip();
+                    g2.clipRect(gutterWidth, 0, getWidth() - gutterWidth, getHeight());
+                    g2.drawString(text.substring(shift).replace('\t', ' '), gutterWidth + charWidth / 2, y);
+                    g2.setClip(clip);
+                }
+            }
+        }
+    }
+}
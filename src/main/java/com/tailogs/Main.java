@@ -1,10 +1,11 @@
 package com.tailogs;
 
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
-import org.fife.ui.rtextarea.RTextScrollPane;
 
 import javax.swing.*;
+import javax.swing.text.Element;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
@@ -13,32 +14,102 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Main extends JFrame {
-    private final RSyntaxTextArea textArea;
+    private RSyntaxTextArea textArea; // Текстовая область активной вкладки
+    private final JTabbedPane editorTabs; // Вкладки открытых файлов
+    private final Map<Component, EditorTab> editors = new HashMap<>(); // Вкладка -> файл редактора
+    private EditorTab activeTab;
+    // Сколько символов держат загруженные документы, пока чистые неактивные не начнут вытесняться
+    private static final long CACHE_MAX_CHARS = Long.getLong("blackparticle.cache.maxChars", 32L << 20);
+    private final DocumentCache documentCache = new DocumentCache(CACHE_MAX_CHARS);
     private final JTextArea consoleArea; // Поле для консоли
+    private final ConsoleBuffer consoleBuffer; // Ограниченный буфер вывода консоли
+    private final JTabbedPane consoleTabs; // Общая консоль и отдельные вкладки вывода команд
+    private final Map<Component, CommandSession> sessions = new HashMap<>(); // Вкладка -> запущенная команда
+    // Сколько строк вывода держится в консоли, остальное сбрасывается в файл
+    private static final int CONSOLE_MAX_LINES = Integer.getInteger("blackparticle.console.maxLines", 10_000);
     private final JTextField commandInput; // Поле для ввода команд
     private final JFileChooser fileChooser;
     private final JTree projectTree;
     private final DefaultMutableTreeNode rootNode;
+    private final ProjectTreeLoader treeLoader; // Ленивая фоновая загрузка дерева проекта
+    private final ProjectWatcher projectWatcher; // Изменения файлов проекта на диске
+    private final ProjectWatcher indexWatcher; // Все каталоги проекта для индексов, независимо от раскрытия дерева
     private final JLabel statusLabel; // Поле состояния
     private final Timer blinkTimer;
     private File currentFile; // Текущий открытый файл
     private boolean darkTheme = true; // Переменная для хранения темы
     private static final Logger logger = Logger.getLogger(Main.class.getName());
     private final JLabel fileInfoLabel; // Поле для информации о файле
-    private boolean fileSaved = true; // Статус сохранения файла
+    private SwingWorker<RSyntaxDocument, Void> loadWorker; // Текущая фоновая загрузка файла
+    private EditorTab loadingTab; // Вкладка, в которую идет загрузка
+    private final Timer selectionTimer; // Откладывает открытие файла, выбранного в дереве
+    private static final int OPEN_DEBOUNCE_MS = Integer.getInteger("blackparticle.open.debounceMs", 60);
+    private static final int PREFETCH_NEIGHBOURS = 2; // Соседних файлов с каждой стороны
+    // Текст соседних файлов, прочитанный заранее
+    private final PrefetchCache prefetchCache = new PrefetchCache(
+            Long.getLong("blackparticle.prefetch.maxChars", 8L << 20), StandardCharsets.UTF_8);
+    private final SaveEngine saveEngine = new SaveEngine(); // Фоновое атомарное сохранение
+    private final FindInFilesPanel findPanel; // Поиск по файлам проекта
+    private final QuickOpenDialog quickOpen; // Быстрое открытие файла по имени
+    private final ReplacePanel replacePanel; // Замена по файлам проекта
+    private final ExecutorService backgroundExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private Future<?> indexTask; // Текущее построение индексов проекта
+    private Future<?> symbolTask; // Текущее построение таблицы символов проекта
+    private volatile SymbolIndex symbolIndex; // Объявления всех файлов проекта, null до построения
+    private volatile TrigramIndex trigramIndex; // Индекс поиска и замены по файлам, null до построения
+    // Пути для быстрого открытия, null до построения; неизменяемый индекс подменяется целиком
+    private final java.util.concurrent.atomic.AtomicReference<PathIndex> pathIndex = new java.util.concurrent.atomic.AtomicReference<>();
+    private int indexGeneration; // Отбрасывает таблицу символов ранее открытого каталога
+    // Изменения, пришедшие до готовности индексов; применяются к каждому индексу при установке
+    private final java.util.Set<Path> changedWhileIndexing = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private final GoToSymbolDialog goToSymbol; // Переход к объявлению по имени
+    private final OutlinePanel outline = new OutlinePanel(this::showLine); // Структура активного файла
+    private final Timer outlineTimer; // Откладывает разбор структуры после правок
+    private static final int OUTLINE_DELAY_MS = Integer.getInteger("blackparticle.outline.delayMs", 500);
+    private int outlineGeneration; // Отбрасывает устаревшие фоновые разборы структуры
+    private final JPanel editorPanel; // Редактор или просмотрщик больших файлов
+    private LargeFileViewer largeFileViewer; // Открыт, если текущий файл больше VIEWER_THRESHOLD
+    // Файлы больше этого размера открываются в просмотрщике только для чтения
+    private static final long VIEWER_THRESHOLD = Long.getLong("blackparticle.viewer.threshold", 64L << 20);
+    // Задержка EDT дольше этого времени считается зависанием интерфейса
+    private static final long EDT_STALL_MS = Long.getLong("blackparticle.edt.stallMs", 200);
+    private final EdtWatchdog edtWatchdog = new EdtWatchdog(EDT_STALL_MS);
+    private DiagnosticsDialog diagnosticsDialog;
+    private final Map<FileProfile.Mode, JRadioButtonMenuItem> modeItems = new HashMap<>(); // null - автоматически
 
     public Main() {
         // Настройки основного окна
         setTitle("BlackParticle");
         setSize(800, 600);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                saveWorkspace(); // Слушатели вызываются до выхода по EXIT_ON_CLOSE
+            }
+        });
         setLocationRelativeTo(null);
 
         // Панель состояния
@@ -49,18 +120,23 @@ public class Main extends JFrame {
         fileInfoLabel = new JLabel("Current File: None | Status: Unsaved | Encoding: UTF-8");
         fileInfoLabel.setForeground(Color.LIGHT_GRAY);
 
-        // Настройка текстовой области с подсветкой синтаксиса
-        textArea = new RSyntaxTextArea(20, 60);
-        textArea.setCodeFoldingEnabled(true);
-        Font font = new Font("Monospaced", Font.PLAIN, 16); // Установка шрифта
-        textArea.setFont(font);
-        textArea.setCodeFoldingEnabled(true);
-        RTextScrollPane sp = new RTextScrollPane(textArea);
+        outlineTimer = new Timer(OUTLINE_DELAY_MS, _ -> updateOutline());
+        outlineTimer.setRepeats(false);
 
-        // Установить темный фон для нумерации строк
-        sp.setLineNumbersEnabled(true);
-        sp.getGutter().setBackground(new Color(30, 30, 30)); // Темный фон для нумерации строк
-        sp.getGutter().setForeground(Color.LIGHT_GRAY); // Цвет текста для нумерации строк
+        // Вкладки редактора, у каждой своя текстовая область с подсветкой синтаксиса
+        editorTabs = new JTabbedPane();
+        editorTabs.addChangeListener(_ -> activateTab(editors.get(editorTabs.getSelectedComponent())));
+        editorTabs.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                closeViewer(); // Щелчок по уже выбранной вкладке тоже возвращает из просмотрщика
+                updateFileInfo();
+                updateStatus();
+            }
+        });
+        editorPanel = new JPanel(new CardLayout());
+        editorPanel.add(editorTabs, "editor");
+        selectTab(addEditorTab(null));
 
         // Файловый выбор
         fileChooser = new JFileChooser();
@@ -79,22 +155,20 @@ public class Main extends JFrame {
 
         // Применение Renderer к дереву
         projectTree.setCellRenderer(treeCellRenderer);
+        try {
+            projectWatcher = new ProjectWatcher();
+            indexWatcher = new ProjectWatcher(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        treeLoader = new ProjectTreeLoader(projectTree, rootNode, projectWatcher);
+        indexWatcher.addListener(changes -> reindex(changes.paths()));
 
-        projectTree.addTreeSelectionListener(_ -> {
-            DefaultMutableTreeNode selectedNode = (DefaultMutableTreeNode) projectTree.getLastSelectedPathComponent();
-            if (selectedNode != null && selectedNode.isLeaf()) {
-                File file = (File) selectedNode.getUserObject();
-                openFile(file);
-            }
-        });
-
-        projectTree.addTreeSelectionListener(_ -> {
-            DefaultMutableTreeNode selectedNode = (DefaultMutableTreeNode) projectTree.getLastSelectedPathComponent();
-            if (selectedNode != null && selectedNode.isLeaf()) {
-                File file = (File) selectedNode.getUserObject();
-                openFile(file);
-            }
-        });
+        // Выбор в дереве открывает файл после короткой паузы: при быстром проходе стрелками
+        // загружается только тот файл, на котором пользователь остановился
+        selectionTimer = new Timer(OPEN_DEBOUNCE_MS, _ -> openTreeSelection());
+        selectionTimer.setRepeats(false);
+        projectTree.addTreeSelectionListener(_ -> selectionTimer.restart());
 
         // Установка темы
         setTheme(darkTheme);
@@ -109,6 +183,14 @@ public class Main extends JFrame {
         JMenuItem saveItem = new JMenuItem("Save");
         saveItem.addActionListener(new SaveAction());
 
+        JMenuItem closeTabItem = new JMenuItem("Close tab");
+        closeTabItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, InputEvent.CTRL_DOWN_MASK));
+        closeTabItem.addActionListener(_ -> closeTab(activeTab));
+
+        JMenuItem cancelLoadItem = new JMenuItem("Cancel loading");
+        cancelLoadItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0));
+        cancelLoadItem.addActionListener(_ -> cancelLoading());
+
         JMenuItem runItem = new JMenuItem("Run");
         runItem.addActionListener(new RunAction());
 
@@ -116,31 +198,100 @@ public class Main extends JFrame {
         themeToggleItem.addActionListener(_ -> {
             darkTheme = !darkTheme; // Переключение темы
             setTheme(darkTheme);
+            applyViewerTheme();
             updateStatus(); // Обновляем статус после изменения темы
         });
 
         fileMenu.add(openItem);
         fileMenu.add(saveItem);
+        fileMenu.add(closeTabItem);
+        fileMenu.add(cancelLoadItem);
         fileMenu.add(runItem);
         fileMenu.add(themeToggleItem); // Добавление переключателя темы
 
+        // Режим редактирования: по умолчанию выбирается по размеру и сложности файла
+        JMenu modeMenu = new JMenu("Highlighting");
+        ButtonGroup modeGroup = new ButtonGroup();
+        addModeItem(modeMenu, modeGroup, "Auto", null);
+        for (FileProfile.Mode mode : FileProfile.Mode.values()) {
+            addModeItem(modeMenu, modeGroup, mode.label, mode);
+        }
+        fileMenu.add(modeMenu);
+
+        JMenuItem diagnosticsItem = new JMenuItem("Diagnostics...");
+        diagnosticsItem.addActionListener(_ -> showDiagnostics());
+        fileMenu.add(diagnosticsItem);
+
+        JMenu consoleMenu = new JMenu("Console");
+
+        JMenuItem searchConsoleItem = new JMenuItem("Search output...");
+        searchConsoleItem.addActionListener(_ -> searchConsole());
+
+        JMenuItem consoleHistoryItem = new JMenuItem("Open older output");
+        consoleHistoryItem.addActionListener(_ -> openConsoleHistory());
+
+        JMenuItem killItem = new JMenuItem("Kill process");
+        killItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_K, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        killItem.addActionListener(_ -> killSelectedCommand());
+
+        JMenuItem closeOutputItem = new JMenuItem("Close output tab");
+        closeOutputItem.addActionListener(_ -> closeSelectedOutput());
+
+        consoleMenu.add(searchConsoleItem);
+        consoleMenu.add(consoleHistoryItem);
+        consoleMenu.add(killItem);
+        consoleMenu.add(closeOutputItem);
+
+        JMenu searchMenu = new JMenu("Search");
+
+        JMenuItem findInFilesItem = new JMenuItem("Find in files...");
+        findInFilesItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        findInFilesItem.addActionListener(_ -> showFindInFiles());
+
+        JMenuItem replaceInFilesItem = new JMenuItem("Replace in files...");
+        replaceInFilesItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        replaceInFilesItem.addActionListener(_ -> showReplaceInFiles());
+
+        JMenuItem quickOpenItem = new JMenuItem("Quick open...");
+        quickOpenItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, InputEvent.CTRL_DOWN_MASK));
+        quickOpenItem.addActionListener(_ -> showQuickOpen());
+
+        JMenuItem goToSymbolItem = new JMenuItem("Go to symbol...");
+        goToSymbolItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_T, InputEvent.CTRL_DOWN_MASK));
+        goToSymbolItem.addActionListener(_ -> showGoToSymbol());
+
+        searchMenu.add(findInFilesItem);
+        searchMenu.add(replaceInFilesItem);
+        searchMenu.add(quickOpenItem);
+        searchMenu.add(goToSymbolItem);
+
         menuBar.add(fileMenu);
+        menuBar.add(searchMenu);
+        menuBar.add(consoleMenu);
         setJMenuBar(menuBar);
 
         // Добавление компонентов в основное окно
-        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(projectTree), sp);
+        JTabbedPane sideTabs = new JTabbedPane(); // Дерево проекта и структура файла
+        sideTabs.addTab("Project", new JScrollPane(projectTree));
+        sideTabs.addTab("Outline", outline);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sideTabs, editorPanel);
         splitPane.setDividerLocation(200);
         add(splitPane, BorderLayout.CENTER);
 
         add(statusLabel, BorderLayout.SOUTH); // Добавление панели состояния
 
         // Инициализация консоли
-        consoleArea = new JTextArea(10, 60); // Указываем количество строк для консоли
-        consoleArea.setEditable(false); // Запрещаем редактирование пользователю
-        consoleArea.setBackground(new Color(30, 30, 30)); // Темный фон для консоли
-        consoleArea.setForeground(Color.LIGHT_GRAY); // Цвет текста
-        consoleArea.setFont(new Font("Monospaced", Font.PLAIN, 14)); // Шрифт консоли
+        consoleArea = createConsoleArea();
         JScrollPane consoleScrollPane = new JScrollPane(consoleArea); // Добавление прокрутки
+        consoleBuffer = new ConsoleBuffer(consoleArea, CONSOLE_MAX_LINES);
+        consoleTabs = new JTabbedPane();
+        consoleTabs.addTab("Console", consoleScrollPane);
+        findPanel = new FindInFilesPanel((path, line) -> openFile(path.toFile(), line));
+        consoleTabs.addTab("Find", findPanel);
+        replacePanel = new ReplacePanel((path, line) -> openFile(path.toFile(), line), this::openBuffers, this::replaceInFiles);
+        consoleTabs.addTab("Replace", replacePanel);
+        quickOpen = new QuickOpenDialog(this, path -> openFile(path.toFile()));
+        goToSymbol = new GoToSymbolDialog(this, (path, line) -> openFile(path.toFile(), line));
 
         // Поле для ввода команд
         commandInput = new JTextField();
@@ -166,7 +317,7 @@ public class Main extends JFrame {
         commandInput.setCaretPosition(commandInput.getText().length()); // Установка курсора в конец
 
         // Добавление консоли в нижнюю часть интерфейса
-        JSplitPane mainSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, splitPane, consoleScrollPane);
+        JSplitPane mainSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, splitPane, consoleTabs);
         mainSplitPane.setDividerLocation(400); // Положение разделителя
         add(mainSplitPane, BorderLayout.CENTER);
         JPanel bottomPanel = new JPanel();
@@ -175,14 +326,395 @@ public class Main extends JFrame {
         bottomPanel.add(fileInfoLabel, BorderLayout.SOUTH); // Метка информации о файле
         add(bottomPanel, BorderLayout.SOUTH);
 
+        edtWatchdog.start();
+        restoreWorkspace();
+    }
+
+    // Открывает рабочее место прошлого запуска: дерево из снимка, вкладки файлов и каретки.
+    // Затем предлагается восстановить несохраненные буферы
+    private void restoreWorkspace() {
+        new SwingWorker<WorkspaceSnapshot, Void>() {
+            private ProjectTreeLoader.Restored tree;
+
+            @Override
+            protected WorkspaceSnapshot doInBackground() throws IOException {
+                WorkspaceSnapshot snapshot = WorkspaceSnapshot.load(WorkspaceSnapshot.defaultLocation());
+                if (snapshot != null && snapshot.root() != null && snapshot.root().isDirectory()) {
+                    tree = ProjectTreeLoader.build(snapshot.root(), snapshot.listings()); // Узлы строятся вне EDT
+                }
+                return snapshot;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    WorkspaceSnapshot snapshot = get();
+                    if (snapshot != null) {
+                        applyWorkspace(snapshot, tree);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "An exception occurred", e.getCause());
+                }
+                // Отчет ставится в очередь после перерисовки восстановленного дерева и вкладок
+                SwingUtilities.invokeLater(Main.this::reportStartup);
+                recoverBuffers();
+            }
+        }.execute();
+    }
+
+    private void applyWorkspace(WorkspaceSnapshot snapshot, ProjectTreeLoader.Restored tree) {
+        if (tree != null) {
+            treeLoader.restore(tree);
+            startIndexing(tree.root());
+        }
+        // Вкладки создаются незагруженными: с диска читается только активная
+        EditorTab active = null;
+        for (int i = 0; i < snapshot.files().size(); i++) {
+            WorkspaceSnapshot.OpenFile open = snapshot.files().get(i);
+            File file = open.file();
+            if (!file.isFile() || file.length() > VIEWER_THRESHOLD || documentCache.contains(file)) continue;
+            EditorTab tab = reusableTab(false);
+            if (tab != null) {
+                tab.setFile(file);
+                tab.unload();
+                documentCache.put(tab);
+                tabEdited(tab);
+            } else {
+                tab = addEditorTab(file);
+            }
+            tab.setCaret(open.caret());
+            if (active == null || i == snapshot.active()) {
+                active = tab;
+            }
+        }
+        if (active != null) {
+            selectTab(active);
+        }
+    }
+
+    // Время от запуска процесса до окна, с которым можно работать
+    private void reportStartup() {
+        ProcessHandle.current().info().startInstant().ifPresent(start -> {
+            long nanos = Duration.between(start, Instant.now()).toNanos();
+            Metrics.record(Metrics.STARTUP, nanos);
+            String ready = String.format("Window ready in %.0f ms", nanos / 1_000_000.0);
+            logger.info(ready);
+            statusLabel.setText(statusLabel.getText() + " | " + ready);
+        });
+    }
+
+    // Снимок рабочего места для следующего запуска
+    private void saveWorkspace() {
+        java.util.List<WorkspaceSnapshot.OpenFile> files = new java.util.ArrayList<>();
+        int active = -1;
+        for (int i = 0; i < editorTabs.getTabCount(); i++) {
+            EditorTab tab = editors.get(editorTabs.getComponentAt(i));
+            if (tab == null || tab.file() == null) continue; // Несохраненные буферы восстанавливаются из журнала
+            if (tab == activeTab) {
+                active = files.size();
+            }
+            files.add(new WorkspaceSnapshot.OpenFile(tab.file(), tab.caret()));
+        }
+        long started = System.nanoTime();
+        try {
+            new WorkspaceSnapshot(treeLoader.root(), treeLoader.capture(), files, active)
+                    .save(WorkspaceSnapshot.defaultLocation());
+            logger.info(String.format("Saved workspace snapshot in %.0f ms", (System.nanoTime() - started) / 1_000_000.0));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "An exception occurred", e);
+        }
+    }
+
+    // Буферы, не сохраненные до сбоя прошлого запуска, восстанавливаются из журналов правок
+    private void recoverBuffers() {
+        record Restored(EditJournal.Recovered buffer, RSyntaxDocument document, FileProfile profile) {
+        }
+        new SwingWorker<java.util.List<Restored>, Void>() {
+            @Override
+            protected java.util.List<Restored> doInBackground() throws Exception {
+                java.util.List<Restored> restored = new java.util.ArrayList<>();
+                for (EditJournal.Recovered buffer : EditJournal.recoverAll()) {
+                    String style = buffer.file() != null
+                            ? getSyntaxStyle(buffer.file().getFileName().toString()) : SyntaxConstants.SYNTAX_STYLE_NONE;
+                    FileProfile profile = FileProfile.measure(buffer.text(), style);
+                    RSyntaxDocument document = new RSyntaxDocument(
+                            profile.mode() == FileProfile.Mode.PLAIN ? SyntaxConstants.SYNTAX_STYLE_NONE : style);
+                    document.insertString(0, buffer.text(), null);
+                    restored.add(new Restored(buffer, document, profile));
+                }
+                return restored;
+            }
+
+            @Override
+            protected void done() {
+                java.util.List<Restored> restored;
+                try {
+                    restored = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "An exception occurred", e.getCause());
+                    return;
+                }
+                if (restored.isEmpty()) return;
+                StringBuilder names = new StringBuilder();
+                for (Restored buffer : restored) {
+                    names.append("\n").append(buffer.buffer().file() != null ? buffer.buffer().file() : "Untitled");
+                }
+                int answer = JOptionPane.showConfirmDialog(Main.this,
+                        "Recover unsaved changes from the previous session?" + names, "Recover",
+                        JOptionPane.YES_NO_OPTION);
+                for (Restored buffer : restored) {
+                    if (answer == JOptionPane.YES_OPTION) {
+                        openRecovered(buffer.buffer(), buffer.document(), buffer.profile());
+                    } else {
+                        EditJournal.delete(buffer.buffer().name());
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    // Восстановленный текст открывается несохраненным; файл на диске не меняется до сохранения
+    private void openRecovered(EditJournal.Recovered buffer, RSyntaxDocument document, FileProfile profile) {
+        File file = buffer.file() != null ? buffer.file().toFile() : null;
+        EditorTab tab = file != null ? documentCache.get(file) : null;
+        if (tab != null && isLoading(tab)) {
+            cancelLoading(); // Восстановленный текст заменит загружаемый с диска
+        }
+        if (tab != null && tab.isDirty()) {
+            // Файл уже правится в другой вкладке: восстановленный текст открывается отдельно
+            buffer = buffer.asUntitled(); // Имя журнала уже занято журналом той вкладки
+            tab = null;
+            file = null;
+        }
+        if (tab == null) {
+            tab = reusableTab(false);
+        }
+        if (tab != null) {
+            if (tab.file() != null && !tab.file().equals(file)) {
+                documentCache.remove(tab.file());
+            }
+            tab.setFile(file);
+            if (file != null) {
+                documentCache.put(tab);
+            }
+        } else {
+            tab = addEditorTab(file);
+        }
+        tab.setPreview(false);
+        tab.setProfile(profile);
+        tab.load(document, EditJournal.restore(buffer));
+        tab.recovered();
+        applyMode(tab);
+        tabEdited(tab);
+        selectTab(tab);
+    }
+
+    private void addModeItem(JMenu menu, ButtonGroup group, String label, FileProfile.Mode mode) {
+        JRadioButtonMenuItem item = new JRadioButtonMenuItem(label, mode == null);
+        item.addActionListener(_ -> {
+            activeTab.setOverride(mode);
+            applyMode(activeTab);
+            updateFileInfo();
+        });
+        group.add(item);
+        menu.add(item);
+        modeItems.put(mode, item);
+    }
+
+    // Включает или отключает дорогие возможности редактора в зависимости от режима вкладки
+    private void applyMode(EditorTab tab) {
+        FileProfile.Mode mode = tab.mode();
+        boolean full = mode == FileProfile.Mode.FULL;
+        tab.area.setCodeFoldingEnabled(full);
+        tab.area.setBracketMatchingEnabled(full);
+        String style = mode == FileProfile.Mode.PLAIN || tab.file() == null
+                ? SyntaxConstants.SYNTAX_STYLE_NONE : getSyntaxStyle(tab.file().getName());
+        if (!style.equals(tab.area.getSyntaxEditingStyle())) {
+            tab.area.setSyntaxEditingStyle(style);
+        }
+    }
+
+    private void showDiagnostics() {
+        if (diagnosticsDialog == null) {
+            diagnosticsDialog = new DiagnosticsDialog(this, edtWatchdog);
+        }
+        diagnosticsDialog.setVisible(true);
+    }
+
+    private EditorTab addEditorTab(File file) {
+        // Настройка текстовой области с подсветкой синтаксиса
+        RSyntaxTextArea area = new RSyntaxTextArea(20, 60);
+        area.setCodeFoldingEnabled(true);
+        area.setFont(new Font("Monospaced", Font.PLAIN, 16)); // Установка шрифта
+        if (file != null) {
+            area.setSyntaxEditingStyle(getSyntaxStyle(file.getName()));
+        }
+
         // Добавление KeyBinding для сохранения файла при нажатии Ctrl+S
-        textArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK), "saveFile");
-        textArea.getActionMap().put("saveFile", new AbstractAction() {
+        area.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK), "saveFile");
+        area.getActionMap().put("saveFile", new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 saveFile();
             }
         });
+
+        EditorTab[] created = new EditorTab[1];
+        EditorTab tab = new EditorTab(file, area, () -> tabEdited(created[0]));
+        created[0] = tab;
+
+        // Установить темный фон для нумерации строк
+        tab.scrollPane.setLineNumbersEnabled(true);
+        tab.scrollPane.getGutter().setBackground(new Color(30, 30, 30)); // Темный фон для нумерации строк
+        tab.scrollPane.getGutter().setForeground(Color.LIGHT_GRAY); // Цвет текста для нумерации строк
+        applyEditorTheme(tab);
+        editors.put(tab.scrollPane, tab);
+        if (file != null) {
+            documentCache.put(tab);
+        }
+        editorTabs.addTab(tab.title(), tab.scrollPane);
+        return tab;
+    }
+
+    private void selectTab(EditorTab tab) {
+        if (editorTabs.getSelectedComponent() == tab.scrollPane) {
+            activateTab(tab);
+        } else {
+            editorTabs.setSelectedComponent(tab.scrollPane); // activateTab вызовет слушатель вкладок
+        }
+    }
+
+    // Делает вкладку активной; вытесненный документ перечитывается с диска
+    private void activateTab(EditorTab tab) {
+        if (tab == null) return;
+        closeViewer();
+        activeTab = tab;
+        textArea = tab.area;
+        currentFile = tab.file();
+        if (currentFile != null) {
+            documentCache.get(currentFile); // Отметка использования для LRU
+        }
+        if (!tab.isLoaded() && !isLoading(tab)) {
+            loadIntoTab(tab, 0);
+        }
+        JRadioButtonMenuItem modeItem = modeItems.get(tab.override());
+        if (modeItem != null) {
+            modeItem.setSelected(true);
+        }
+        updateFileInfo();
+        updateStatus();
+        updateOutline();
+    }
+
+    private void tabEdited(EditorTab tab) {
+        int index = editorTabs.indexOfComponent(tab.scrollPane);
+        if (index >= 0 && !editorTabs.getTitleAt(index).equals(tab.title())) {
+            editorTabs.setTitleAt(index, tab.title());
+        }
+        if (tab == activeTab) {
+            updateFileInfo();
+            outlineTimer.restart(); // Структура разбирается, когда пользователь остановился
+        }
+    }
+
+    // Структура активного файла: сохраненный файл проекта берется из таблицы символов,
+    // несохраненный буфер или файл вне проекта разбирается в фоне по копии текста
+    private void updateOutline() {
+        outlineTimer.stop();
+        int generation = ++outlineGeneration;
+        EditorTab tab = activeTab;
+        if (tab == null || !tab.isLoaded()) {
+            outline.show(currentFile, java.util.List.of());
+            return;
+        }
+        File file = tab.file();
+        Path path = file != null ? file.toPath().toAbsolutePath().normalize() : null;
+        SymbolIndex index = symbolIndex;
+        if (path != null && index != null && !tab.isDirty() && index.contains(path)) {
+            outline.show(file, index.symbols(path));
+            return;
+        }
+        if (tab.mode() != FileProfile.Mode.FULL) {
+            // Тяжелый файл не копируется и не разбирается на каждую паузу в наборе: показывается
+            // структура последнего сохранения, если она есть
+            outline.show(file, path != null && index != null ? index.symbols(path) : java.util.List.of());
+            return;
+        }
+        String style = file != null ? getSyntaxStyle(file.getName()) : SyntaxConstants.SYNTAX_STYLE_NONE;
+        if (!SymbolExtractor.supports(style)) {
+            outline.show(file, java.util.List.of());
+            return;
+        }
+        char[] content = SaveEngine.snapshot(tab.area.getDocument()); // Без промежуточной строки в EDT
+        backgroundExecutor.submit(() -> {
+            java.util.List<SymbolIndex.Symbol> symbols = SymbolIndex.extract(path, new String(content), style);
+            SwingUtilities.invokeLater(() -> {
+                if (generation == outlineGeneration) outline.show(file, symbols);
+            });
+        });
+    }
+
+    // Обновляет индексы проекта для изменившихся путей: события indexWatcher, сохранения и замены.
+    // Сохраненный файл переиндексируется сразу, не дожидаясь события файловой системы
+    private void reindex(java.util.Collection<Path> paths) {
+        SymbolIndex symbols = symbolIndex;
+        TrigramIndex trigrams = trigramIndex;
+        java.util.Set<Path> normalized = new java.util.HashSet<>();
+        for (Path path : paths) {
+            normalized.add(path.toAbsolutePath().normalize());
+        }
+        if (symbols == null || trigrams == null || pathIndex.get() == null) {
+            changedWhileIndexing.addAll(normalized); // Индекс еще строится по старому списку файлов
+        }
+        if (symbols == null && trigrams == null && pathIndex.get() == null) {
+            SwingUtilities.invokeLater(this::updateOutline);
+            return;
+        }
+        backgroundExecutor.submit(() -> {
+            updatePathIndex(normalized); // Созданные файлы сразу видны быстрому открытию
+            if (trigrams != null) {
+                trigrams.changed(normalized); // Новые совпадения сразу видны поиску и замене
+            }
+            if (symbols != null) {
+                symbols.changed(normalized); // Переразбираются только изменившиеся файлы
+            }
+            SwingUtilities.invokeLater(this::updateOutline);
+        });
+    }
+
+    private void closeTab(EditorTab tab) {
+        if (tab == null) return;
+        if (tab.isDirty()) {
+            int answer = JOptionPane.showConfirmDialog(this, "Discard unsaved changes in " + tab.title() + "?",
+                    "Close tab", JOptionPane.YES_NO_OPTION);
+            if (answer != JOptionPane.YES_OPTION) return;
+        }
+        if (isLoading(tab)) {
+            cancelLoading();
+        }
+        editors.remove(tab.scrollPane);
+        if (tab.file() != null) {
+            documentCache.remove(tab.file());
+        }
+        tab.close();
+        editorTabs.remove(tab.scrollPane);
+        if (editors.isEmpty()) {
+            selectTab(addEditorTab(null)); // Всегда остается хотя бы одна вкладка
+        }
+    }
+
+    private JTextArea createConsoleArea() {
+        JTextArea area = new JTextArea(10, 60); // Указываем количество строк для консоли
+        area.setEditable(false); // Запрещаем редактирование пользователю
+        area.setBackground(new Color(30, 30, 30)); // Темный фон для консоли
+        area.setForeground(Color.LIGHT_GRAY); // Цвет текста
+        area.setFont(new Font("Monospaced", Font.PLAIN, 14)); // Шрифт консоли
+        return area;
     }
 
     private void executeCommand(String command) {
@@ -193,87 +725,282 @@ public class Main extends JFrame {
 
         // Проверка на команды cls или clear
         if (command.trim().equalsIgnoreCase("cls") || command.trim().equalsIgnoreCase("clear")) {
-            consoleArea.setText(""); // Очищаем консоль
+            selectedConsoleBuffer().clear(); // Очищаем текущую вкладку консоли
             commandInput.setText(">>> "); // Устанавливаем ">>>" для следующего ввода
             return; // Выходим из метода, не выполняя дальнейшие действия
         }
+        if (command.isBlank()) return;
 
-        consoleArea.append(">> " + command + "\n"); // Отображаем команду
+        consoleBuffer.append(">> " + command); // Отображаем команду
 
-        String finalCommand = command;
-        SwingWorker<Void, String> worker = new SwingWorker<>() {
-            @Override
-            protected Void doInBackground() {
+        // Каждая команда выполняется в своем виртуальном потоке и выводит в свою вкладку
+        JScrollPane outputPane = new JScrollPane(createConsoleArea());
+        ConsoleBuffer buffer = new ConsoleBuffer((JTextArea) outputPane.getViewport().getView(), CONSOLE_MAX_LINES);
+        CommandSession session = new CommandSession(command, buffer, CommandSession.outputCharset());
+        String title = command.length() > 20 ? command.substring(0, 20) + "…" : command;
+        sessions.put(outputPane, session);
+        consoleTabs.addTab("▶ " + title, outputPane);
+        consoleTabs.setSelectedComponent(outputPane);
+        buffer.append(">> " + command);
+        commandInput.setText(">>> "); // Можно сразу вводить следующую команду
+        session.start(summary -> {
+            consoleBuffer.append(summary); // Время выполнения и объем вывода
+            int index = consoleTabs.indexOfComponent(outputPane);
+            if (index >= 0) {
+                consoleTabs.setTitleAt(index, title);
+            }
+            blinkTimer.stop(); // Останавливаем мигание после выполнения команды
+        });
+    }
+
+    private void showFindInFiles() {
+        consoleTabs.setSelectedComponent(findPanel);
+        findPanel.focusQuery();
+    }
+
+    private void showReplaceInFiles() {
+        consoleTabs.setSelectedComponent(replacePanel);
+        replacePanel.focusQuery();
+    }
+
+    // Загруженные вкладки файлов по нормализованному пути
+    private Map<Path, EditorTab> loadedTabs() {
+        Map<Path, EditorTab> tabs = new HashMap<>();
+        for (EditorTab tab : editors.values()) {
+            if (tab.file() != null && tab.isLoaded()) {
+                tabs.put(tab.file().toPath().toAbsolutePath().normalize(), tab);
+            }
+        }
+        return tabs;
+    }
+
+    // Копии загруженных буферов: замена ищется в них, а не в файле на диске
+    private Map<Path, ProjectReplace.Buffer> openBuffers() {
+        Map<Path, ProjectReplace.Buffer> buffers = new HashMap<>();
+        loadedTabs().forEach((path, tab) -> buffers.put(path, new ProjectReplace.Buffer(tab.area.getText(), tab.edits(), tab.isDirty())));
+        return buffers;
+    }
+
+    // Применяет отмеченные замены одной транзакцией. Файлы и чистые буферы записываются на диск
+    // вместе, после чего открытые буферы правятся на месте; несохраненные буферы только правятся
+    private void replaceInFiles(java.util.List<ProjectReplace.FileChange> changes) {
+        Map<Path, EditorTab> tabs = loadedTabs();
+        Map<Path, String> bufferTexts = new HashMap<>();
+        java.util.List<ProjectReplace.FileChange> written = new java.util.ArrayList<>();
+        for (ProjectReplace.FileChange change : changes) {
+            EditorTab tab = tabs.get(change.file());
+            boolean changedSincePreview = change.fromBuffer()
+                    ? tab == null || tab.edits() != change.bufferEdits()
+                    : tab != null; // Файл открыли после просмотра: его буфер устарел бы
+            if (changedSincePreview) {
+                replacePanel.finished(change.file().getFileName() + " changed since the preview, nothing replaced. Preview again");
+                return;
+            }
+            if (change.dirty()) continue;
+            if (change.fromBuffer()) {
+                bufferTexts.put(change.file(), tab.area.getText());
+            }
+            written.add(change);
+        }
+        backgroundExecutor.submit(() -> {
+            long started = System.nanoTime();
+            try {
+                ProjectReplace.commit(written, bufferTexts);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "An exception occurred", e);
+                SwingUtilities.invokeLater(() -> replacePanel.finished("Replace failed, no files changed: " + e.getMessage()));
+                return;
+            }
+            long nanos = System.nanoTime() - started;
+            Metrics.record(Metrics.REPLACE, nanos);
+            reindex(written.stream().map(ProjectReplace.FileChange::file).toList()); // Следующий просмотр видит новый текст
+            SwingUtilities.invokeLater(() -> {
+                int edits = 0;
+                String summary;
+                java.util.List<String> conflicts = new java.util.ArrayList<>();
                 try {
-                    // Разделяем и запускаем процесс
-                    String[] commandArray = finalCommand.split(" ");
-                    ProcessBuilder processBuilder = new ProcessBuilder(commandArray);
-                    processBuilder.redirectErrorStream(true);
-                    Process process = processBuilder.start();
-
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.forName("Windows-1251")))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            // Преобразуем строку в UTF-8 и публикуем результат
-                            publish(new String(line.getBytes("Windows-1251"), StandardCharsets.UTF_8));
+                    for (ProjectReplace.FileChange change : changes) {
+                        edits += change.edits().size();
+                        if (change.fromBuffer() && !replaceInBuffer(tabs.get(change.file()), change)) {
+                            conflicts.add(change.file().getFileName().toString());
                         }
                     }
-                    process.waitFor();
-                } catch (IOException | InterruptedException e) {
-                    publish("Command execution failed: " + e.getMessage());
+                    summary = String.format("Replaced %d occurrences in %d files in %.0f ms", edits, changes.size(),
+                            nanos / 1_000_000.0);
+                    logger.info(summary);
+                    if (!conflicts.isEmpty()) {
+                        summary += " | Edited during replace, buffer left without replacements: " + String.join(", ", conflicts);
+                    }
+                } catch (RuntimeException e) {
+                    // Файлы уже заменены, не удалось обновить открытый буфер
+                    logger.log(Level.SEVERE, "An exception occurred", e);
+                    summary = "Files replaced, but an open buffer could not be updated: " + e.getMessage();
                 }
-                return null;
+                replacePanel.finished(summary);
+                updateFileInfo();
+                updateStatus();
+            });
+        });
+    }
+
+    // Правит открытый буфер теми же заменами, что записаны на диск, одной правкой для отмены.
+    // false, если буфер правили, пока шла запись: файл на диске уже заменен, буфер остается как есть
+    // и помечается конфликтующим, чтобы сохранение не затерло замену молча
+    private boolean replaceInBuffer(EditorTab tab, ProjectReplace.FileChange change) {
+        if (!editors.containsKey(tab.scrollPane) || !tab.isLoaded()) return true; // Вкладку закрыли или вытеснили
+        if (tab.edits() != change.bufferEdits()) {
+            logger.warning(change.file() + " was edited during replace, the buffer is left unchanged");
+            if (!change.dirty()) {
+                tab.markConflict();
+                tabEdited(tab);
+            }
+            return false;
+        }
+        tab.area.beginAtomicEdit();
+        try {
+            java.util.List<ProjectReplace.Edit> edits = change.edits();
+            for (int i = edits.size() - 1; i >= 0; i--) { // С конца, чтобы смещения не сдвигались
+                ProjectReplace.Edit edit = edits.get(i);
+                tab.area.replaceRange(edit.replacement(), edit.start(), edit.end());
+            }
+        } finally {
+            tab.area.endAtomicEdit();
+        }
+        if (!change.dirty()) {
+            tab.saved(tab.edits()); // Тот же текст уже на диске
+        }
+        tabEdited(tab);
+        return true;
+    }
+
+    private void showQuickOpen() {
+        quickOpen.showDialog();
+    }
+
+    private void showGoToSymbol() {
+        goToSymbol.showDialog();
+    }
+
+    private ConsoleBuffer selectedConsoleBuffer() {
+        CommandSession session = sessions.get(consoleTabs.getSelectedComponent());
+        return session != null ? session.buffer() : consoleBuffer;
+    }
+
+    private JTextArea selectedConsoleArea() {
+        Component selected = consoleTabs.getSelectedComponent();
+        if (!sessions.containsKey(selected)) return consoleArea;
+        return (JTextArea) ((JScrollPane) selected).getViewport().getView();
+    }
+
+    private void killSelectedCommand() {
+        CommandSession session = sessions.get(consoleTabs.getSelectedComponent());
+        if (session != null && session.isRunning()) {
+            session.kill();
+        }
+    }
+
+    // Закрывает вкладку вывода команды; общую консоль закрыть нельзя
+    private void closeSelectedOutput() {
+        Component selected = consoleTabs.getSelectedComponent();
+        CommandSession session = sessions.remove(selected);
+        if (session == null) return;
+        session.kill();
+        session.buffer().dispose();
+        consoleTabs.remove(selected);
+    }
+
+    // Поиск по всему выводу консоли, включая сброшенный на диск
+    private void searchConsole() {
+        String query = JOptionPane.showInputDialog(this, "Search console output:");
+        if (query == null || query.isEmpty()) return;
+        ConsoleBuffer buffer = selectedConsoleBuffer();
+        String visibleText = selectedConsoleArea().getText();
+        new SwingWorker<java.util.List<String>, Void>() {
+            @Override
+            protected java.util.List<String> doInBackground() throws IOException {
+                return buffer.search(query, visibleText, 1000);
             }
 
             @Override
-            protected void process(java.util.List<String> chunks) {
-                for (String line : chunks) {
-                    consoleArea.append(line + "\n");
+            protected void done() {
+                try {
+                    java.util.List<String> matches = get();
+                    JList<String> list = new JList<>(matches.toArray(new String[0]));
+                    list.setFont(consoleArea.getFont());
+                    JScrollPane scrollPane = new JScrollPane(list);
+                    scrollPane.setPreferredSize(new Dimension(700, 400));
+                    JOptionPane.showMessageDialog(Main.this, scrollPane,
+                            matches.size() + " matches for \"" + query + "\"", JOptionPane.PLAIN_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "An exception occurred", e.getCause());
                 }
             }
+        }.execute();
+    }
+
+    // Открывает вытесненный из консоли вывод; большие файлы попадут в просмотрщик
+    private void openConsoleHistory() {
+        ConsoleBuffer buffer = selectedConsoleBuffer();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                buffer.syncSpill();
+                return null;
+            }
 
             @Override
             protected void done() {
-                commandInput.setText(">>> "); // Устанавливаем ">>>" для следующего ввода
-                blinkTimer.stop(); // Останавливаем мигание после выполнения команды
+                openFile(buffer.spillFile().toFile());
             }
-        };
-        worker.execute(); // Запускаем фоновую задачу
+        }.execute();
     }
 
     private void saveFile() {
+        if (largeFileViewer != null) {
+            statusLabel.setText("Large files are opened read-only");
+            return;
+        }
         if (currentFile == null) {
             // Если файл не выбран, вызываем диалог для сохранения
-            JFileChooser fileChooser = new JFileChooser();
             int returnValue = fileChooser.showSaveDialog(this);
             if (returnValue == JFileChooser.APPROVE_OPTION) {
                 currentFile = fileChooser.getSelectedFile();
+                activeTab.setFile(currentFile);
+                documentCache.put(activeTab);
+                applyMode(activeTab);
+                tabEdited(activeTab); // Новое имя вкладки
             } else {
                 return; // Если пользователь отменил, выходим
             }
         }
-
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(currentFile), StandardCharsets.UTF_8))) {
-            writer.write(textArea.getText());
-            fileSaved = true; // Обновляем статус сохранения
-            updateFileInfo();
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "An exception occurred", e);
-        }
+        saveFile(currentFile);
     }
 
     private void updateFileInfo() {
         if (currentFile != null) {
-            fileInfoLabel.setText("Current File: " + currentFile.getName() + " | Status: " + (fileSaved ? "Saved" : "Unsaved") + " | Encoding: UTF-8");
+            boolean fileSaved = largeFileViewer != null || !activeTab.isDirty();
+            fileInfoLabel.setText("Current File: " + currentFile.getName() + " | Status: " + (fileSaved ? "Saved" : "Unsaved") + " | Encoding: UTF-8" + modeInfo());
         } else {
             fileInfoLabel.setText("Current File: None | Status: Unsaved | Encoding: UTF-8");
         }
     }
 
+    // Пусто в полном режиме; иначе режим и причина, по которой он выбран
+    private String modeInfo() {
+        if (largeFileViewer != null) return " | Mode: Read-only viewer";
+        FileProfile.Mode mode = activeTab.mode();
+        if (activeTab.override() != null) return " | Mode: " + mode.label + " (manual)";
+        if (mode == FileProfile.Mode.FULL) return "";
+        return " | Mode: " + mode.label + " (" + activeTab.profile().reason() + ")";
+    }
+
     private void setTheme(boolean dark) {
+        for (EditorTab tab : editors.values()) {
+            applyEditorTheme(tab);
+        }
         if (dark) {
-            textArea.setBackground(new Color(30, 30, 30));
-            textArea.setForeground(Color.LIGHT_GRAY);
             statusLabel.setForeground(Color.LIGHT_GRAY);
             projectTree.setBackground(new Color(40, 40, 40));
             projectTree.setForeground(Color.LIGHT_GRAY);
@@ -292,8 +1019,6 @@ public class Main extends JFrame {
 
             SwingUtilities.updateComponentTreeUI(this); // Обновление интерфейса
         } else {
-            textArea.setBackground(Color.WHITE);
-            textArea.setForeground(Color.BLACK);
             statusLabel.setForeground(Color.BLACK);
             projectTree.setBackground(Color.WHITE);
             projectTree.setForeground(Color.BLACK);
@@ -314,7 +1039,17 @@ public class Main extends JFrame {
         }
     }
 
-    private String getSyntaxStyle(String fileName) {
+    private void applyEditorTheme(EditorTab tab) {
+        if (darkTheme) {
+            tab.area.setBackground(new Color(30, 30, 30));
+            tab.area.setForeground(Color.LIGHT_GRAY);
+        } else {
+            tab.area.setBackground(Color.WHITE);
+            tab.area.setForeground(Color.BLACK);
+        }
+    }
+
+    static String getSyntaxStyle(String fileName) {
         String extension = getFileExtension(fileName);
         return switch (extension) {
             case "c", "h" -> SyntaxConstants.SYNTAX_STYLE_C;  // Для .c и .h файлов
@@ -334,7 +1069,7 @@ public class Main extends JFrame {
         };
     }
 
-    private String getFileExtension(String fileName) {
+    private static String getFileExtension(String fileName) {
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
             return fileName.substring(dotIndex + 1).toLowerCase();
@@ -350,80 +1085,462 @@ public class Main extends JFrame {
             int returnValue = directoryChooser.showOpenDialog(null);
             if (returnValue == JFileChooser.APPROVE_OPTION) {
                 File selectedDirectory = directoryChooser.getSelectedFile();
-                loadFilesIntoTree(selectedDirectory);
-                updateFileListDisplay(); // Обновление отображения списка файлов
+                loadFilesIntoTree(selectedDirectory); // Дальше дерево обновляется по событиям файловой системы
             }
         }
     }
 
     private void loadFilesIntoTree(File directory) {
-        rootNode.removeAllChildren();
-        addFilesToTree(directory, rootNode);
-        ((DefaultTreeModel) projectTree.getModel()).reload();
-    }
-
-    private void addFilesToTree(File directory, DefaultMutableTreeNode node) {
-        File[] files = directory.listFiles();
-
-        if (files != null) {
-            for (File file : files) {
-                if (!file.getName().startsWith(".")) {
-                    // Используем только имя файла вместо полного пути
-                    DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(file.getName());
-                    // Сохраняем файл как объект, чтобы его можно было открыть
-                    childNode.setUserObject(file);
-                    node.add(childNode);
-                    if (file.isDirectory()) {
-                        addFilesToTree(file, childNode);
-                    }
-                }
-            }
-        }
+        // Каталоги читаются в фоне по мере раскрытия узлов, предыдущее сканирование отменяется
+        treeLoader.open(directory);
+        startIndexing(directory);
     }
 
-    private void openFile(File file) {
-        if (file.isFile()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                textArea.setText("");
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    textArea.append(line + "\n");
+    // Строит индекс для поиска по файлам: сохраненный индекс загружается и обновляется
+    // только для изменившихся файлов, иначе строится заново. Таблица символов строится
+    // параллельно по тому же списку файлов
+    private void updatePathIndex(java.util.Collection<Path> paths) {
+        PathIndex current;
+        PathIndex next;
+        do {
+            current = pathIndex.get();
+            if (current == null) return; // Открыт другой каталог или индекс еще строится
+            next = current.changed(paths);
+            if (next == current) return;
+        } while (!pathIndex.compareAndSet(current, next));
+        PathIndex installed = next;
+        SwingUtilities.invokeLater(() -> {
+            if (pathIndex.get() == installed) quickOpen.setIndex(installed);
+        });
+    }
+
+    // Вызывается в EDT сразу после установки индекса
+    private void applyChangedWhileIndexing(java.util.function.Consumer<java.util.Set<Path>> index) {
+        java.util.Set<Path> changed = java.util.Set.copyOf(changedWhileIndexing);
+        if (changed.isEmpty()) return;
+        backgroundExecutor.submit(() -> {
+            index.accept(changed);
+            SwingUtilities.invokeLater(this::updateOutline);
+        });
+    }
+
+    private void startIndexing(File directory) {
+        if (indexTask != null) {
+            indexTask.cancel(true);
+        }
+        if (symbolTask != null) {
+            symbolTask.cancel(true);
+        }
+        Path root = directory.toPath().toAbsolutePath().normalize();
+        findPanel.indexing(root);
+        replacePanel.setIndex(null);
+        trigramIndex = null;
+        symbolIndex = null;
+        pathIndex.set(null);
+        changedWhileIndexing.clear();
+        indexWatcher.unwatchAll(); // Каталоги прежнего проекта
+        goToSymbol.setIndex(null);
+        int generation = ++indexGeneration;
+        CompletableFuture<java.util.List<Path>> listing = new CompletableFuture<>();
+        symbolTask = backgroundExecutor.submit(() -> {
+            try {
+                java.util.List<Path> files = listing.get();
+                long started = System.nanoTime();
+                SymbolIndex index = SymbolIndex.build(root, files);
+                if (Thread.currentThread().isInterrupted()) return;
+                long millis = (System.nanoTime() - started) / 1_000_000;
+                logger.info("Indexed " + index.symbolCount() + " symbols in " + index.fileCount() + " files of "
+                        + root + " in " + millis + " ms");
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != indexGeneration) return; // Уже открыт другой каталог
+                    symbolIndex = index;
+                    applyChangedWhileIndexing(index::changed);
+                    goToSymbol.setIndex(index);
+                    updateOutline();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Ошибка обхода каталога уже записана задачей индексации
+            }
+        });
+        indexTask = backgroundExecutor.submit(() -> {
+            long started = System.nanoTime();
+            try {
+                java.util.List<Path> files;
+                try {
+                    indexWatcher.watchTree(root); // До обхода: изменение после него придет событием
+                    files = ProjectFiles.walk(root);
+                } catch (IOException | RuntimeException e) {
+                    listing.completeExceptionally(e);
+                    throw e;
                 }
-                currentFile = file;
-                textArea.setSyntaxEditingStyle(getSyntaxStyle(file.getName())); // Установка стиля синтаксиса
-                updateStatus(); // Обновляем статус после открытия файла
+                listing.complete(files);
+                PathIndex paths = PathIndex.build(root, files);
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != indexGeneration) return; // Уже открыт другой каталог
+                    pathIndex.set(paths);
+                    quickOpen.setIndex(paths);
+                    applyChangedWhileIndexing(this::updatePathIndex);
+                });
+                Path cache = AppData.directory("index").resolve(AppData.key(root) + ".trigrams");
+                TrigramIndex index = TrigramIndex.load(cache, root);
+                if (index == null) {
+                    index = TrigramIndex.build(root, files);
+                } else {
+                    index.refresh(files);
+                }
+                if (Thread.currentThread().isInterrupted()) return;
+                index.save(cache);
+                long millis = (System.nanoTime() - started) / 1_000_000;
+                logger.info("Indexed " + index.fileCount() + " files of " + root + " in " + millis + " ms");
+                TrigramIndex ready = index;
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != indexGeneration) return; // Уже открыт другой каталог
+                    trigramIndex = ready;
+                    applyChangedWhileIndexing(ready::changed);
+                    findPanel.setIndex(ready, millis);
+                    replacePanel.setIndex(ready);
+                });
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "An exception occurred", e);
             }
+        });
+    }
+
+    private void openFile(File file) {
+        openFile(file, 0);
+    }
+
+    private void openFile(File file, int line) {
+        openFile(file, line, false);
+    }
+
+    private void openTreeSelection() {
+        DefaultMutableTreeNode selectedNode = (DefaultMutableTreeNode) projectTree.getLastSelectedPathComponent();
+        if (selectedNode != null && selectedNode.isLeaf() && selectedNode.getUserObject() instanceof File file) {
+            openFile(file, 0, true);
         }
     }
 
-    private class SaveAction implements ActionListener {
-        @Override
-        public void actionPerformed(ActionEvent e) {
-            if (currentFile != null) {
-                saveFile(currentFile);
+    // line > 0 - после загрузки перейти к этой строке (с единицы); preview - файл открыт проходом
+    // по дереву и займет вкладку предпросмотра, а не новую
+    private void openFile(File file, int line, boolean preview) {
+        if (!file.isFile()) return;
+        if (file.length() > VIEWER_THRESHOLD) {
+            cancelLoading(); // Предыдущая загрузка больше не нужна
+            openInViewer(file);
+            showLine(line);
+            return;
+        }
+        EditorTab tab = documentCache.get(file);
+        if (tab == null) {
+            // Пустая безымянная вкладка или чистая вкладка предпросмотра занимается файлом,
+            // иначе открывается новая
+            EditorTab reusable = reusableTab(preview);
+            if (reusable != null) {
+                tab = reusable;
+                if (tab.file() != null) {
+                    documentCache.remove(tab.file());
+                }
+                if (isLoading(tab)) {
+                    cancelLoading(); // Вкладка еще читала прошлый файл: загрузка ниже начнется заново
+                }
+                tab.setFile(file);
+                tab.unload();
+                documentCache.put(tab);
             } else {
-                int returnValue = fileChooser.showSaveDialog(Main.this);
-                if (returnValue == JFileChooser.APPROVE_OPTION) {
-                    File selectedFile = fileChooser.getSelectedFile();
-                    saveFile(selectedFile);
+                tab = addEditorTab(file);
+            }
+            tab.setPreview(preview);
+            tabEdited(tab);
+        } else if (!preview && tab.isPreview()) {
+            tab.setPreview(false); // Открыт явно: вкладка закрепляется
+            tabEdited(tab);
+        }
+        boolean loaded = tab.isLoaded(); // Документ уже в памяти, диск не читается
+        if (!loaded && !isLoading(tab)) {
+            loadIntoTab(tab, line);
+        }
+        selectTab(tab);
+        if (loaded) {
+            showLine(line);
+            if (preview) {
+                prefetchNeighbours();
+            }
+        }
+    }
+
+    private EditorTab reusableTab(boolean preview) {
+        if (activeTab != null && activeTab.file() == null && !activeTab.isDirty()
+                && activeTab.area.getDocument().getLength() == 0) {
+            return activeTab;
+        }
+        if (!preview) return null;
+        for (EditorTab tab : editors.values()) {
+            if (tab.isPreview() && !tab.isDirty()) return tab;
+        }
+        return null;
+    }
+
+    // Соседние с выбранным в дереве файлы читаются в фоне, чтобы шаг по каталогу не ждал диска
+    private void prefetchNeighbours() {
+        DefaultMutableTreeNode selectedNode = (DefaultMutableTreeNode) projectTree.getLastSelectedPathComponent();
+        if (selectedNode == null || selectedNode.getParent() == null) return;
+        DefaultMutableTreeNode parent = (DefaultMutableTreeNode) selectedNode.getParent();
+        int index = parent.getIndex(selectedNode);
+        java.util.List<Path> neighbours = new java.util.ArrayList<>();
+        for (int distance = 1; distance <= PREFETCH_NEIGHBOURS; distance++) {
+            for (int i : new int[]{index + distance, index - distance}) {
+                if (i < 0 || i >= parent.getChildCount()) continue;
+                DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(i);
+                if (!child.getAllowsChildren() && child.getUserObject() instanceof File file
+                        && !documentCache.contains(file)) {
+                    neighbours.add(file.toPath());
                 }
             }
         }
+        prefetchCache.prefetch(neighbours);
     }
 
-    private void saveFile(File file) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            writer.write(textArea.getText());
-            currentFile = file;
-            updateStatus(); // Обновляем статус после сохранения файла
+    private boolean isLoading(EditorTab tab) {
+        return loadWorker != null && loadingTab == tab;
+    }
+
+    // Читает файл вкладки в фоне; документ подставляется в ее текстовую область одним вызовом
+    private void loadIntoTab(EditorTab tab, int line) {
+        cancelLoading(); // Предыдущая загрузка больше не нужна
+        File file = tab.file();
+        long size = file.length();
+        long started = System.nanoTime();
+        String syntaxStyle = getSyntaxStyle(file.getName());
+        FileProfile.Mode override = tab.override();
+        SwingWorker<RSyntaxDocument, Void> worker = new SwingWorker<>() {
+            private FileProfile profile;
+            private EditJournal journal;
+
+            @Override
+            protected RSyntaxDocument doInBackground() throws Exception {
+                // Основа журнала правок - файл в том виде, в каком он сейчас будет прочитан
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                journal = EditJournal.forFile(file.toPath(), attributes.size(), attributes.lastModifiedTime().toMillis());
+                String text = prefetchCache.get(file.toPath());
+                if (text == null) {
+                    text = TextFileReader.read(file.toPath(), StandardCharsets.UTF_8,
+                            bytes -> setProgress(size > 0 ? (int) Math.min(100, bytes * 100 / size) : 100));
+                }
+                // Тяжелый файл сразу строится простым текстом: разбор на токены при вставке не нужен
+                profile = FileProfile.measure(text, syntaxStyle);
+                FileProfile.Mode mode = override != null ? override : profile.mode();
+                RSyntaxDocument document = new RSyntaxDocument(
+                        mode == FileProfile.Mode.PLAIN ? SyntaxConstants.SYNTAX_STYLE_NONE : syntaxStyle);
+                document.insertString(0, text, null);
+                return document;
+            }
+
+            @Override
+            protected void done() {
+                if (loadWorker == this) {
+                    loadWorker = null;
+                    loadingTab = null;
+                }
+                if (!file.equals(tab.file())) return; // Вкладка предпросмотра уже занята другим файлом
+                if (isCancelled()) {
+                    if (loadWorker == null) { // Отменено пользователем, а не новой загрузкой
+                        statusLabel.setText("Loading cancelled: " + file.getName());
+                    }
+                    if (!tab.isLoaded() && !tab.wasLoaded() && tab != loadingTab) {
+                        discardTab(tab); // Файл так и не был показан
+                    }
+                    return;
+                }
+                try {
+                    RSyntaxDocument document = get();
+                    tab.setProfile(profile);
+                    tab.load(document, journal);
+                    applyMode(tab);
+                    if (tab.mode() != FileProfile.Mode.FULL) {
+                        logger.info(file + " opened in " + tab.mode().label + " mode: " + profile.reason());
+                    }
+                    long elapsed = System.nanoTime() - started;
+                    Metrics.record(Metrics.OPEN, elapsed);
+                    java.util.List<EditorTab> evicted = documentCache.trim(activeTab);
+                    if (!evicted.isEmpty()) {
+                        logger.info("Evicted " + evicted.size() + " documents, " + documentCache.loadedChars() + " chars cached");
+                    }
+                    if (tab != activeTab) return;
+                    if (tab.isPreview()) {
+                        prefetchNeighbours();
+                    }
+                    showLine(line);
+                    updateFileInfo();
+                    updateStatus(); // Обновляем статус после открытия файла
+                    updateOutline();
+                    String throughput = formatThroughput(size, elapsed);
+                    statusLabel.setText(statusLabel.getText() + " | " + throughput);
+                    logger.info("Loaded " + file + ": " + throughput);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    statusLabel.setText("Failed to load " + file.getName());
+                    logger.log(Level.SEVERE, "An exception occurred", e.getCause());
+                    if (!tab.wasLoaded()) {
+                        discardTab(tab);
+                    }
+                }
+            }
+        };
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName()) && loadWorker == worker && tab == activeTab) {
+                statusLabel.setText("Loading " + file.getName() + "… " + event.getNewValue() + "% (Esc to cancel)");
+            }
+        });
+        loadWorker = worker;
+        loadingTab = tab;
+        statusLabel.setText("Loading " + file.getName() + "… (Esc to cancel)");
+        worker.execute();
+    }
+
+    // Закрывает вкладку без вопросов: в ней нет ничего, кроме незагруженного файла
+    private void discardTab(EditorTab tab) {
+        if (!editors.containsKey(tab.scrollPane)) return;
+        editors.remove(tab.scrollPane);
+        documentCache.remove(tab.file());
+        tab.close();
+        editorTabs.remove(tab.scrollPane);
+        if (editors.isEmpty()) {
+            selectTab(addEditorTab(null));
+        }
+    }
+
+    private void showLine(int line) {
+        if (line <= 0) return;
+        if (largeFileViewer != null) {
+            largeFileViewer.goToLine(line);
+            return;
+        }
+        Element root = textArea.getDocument().getDefaultRootElement();
+        int index = Math.min(line, root.getElementCount()) - 1;
+        textArea.setCaretPosition(root.getElement(index).getStartOffset());
+        textArea.requestFocusInWindow();
+    }
+
+    // Отображает файл в память и показывает его в просмотрщике, не создавая документ Swing
+    private void openInViewer(File file) {
+        long started = System.nanoTime();
+        MappedTextFile mapped;
+        try {
+            mapped = new MappedTextFile(file.toPath(), StandardCharsets.UTF_8, () -> SwingUtilities.invokeLater(() -> {
+                if (largeFileViewer != null) {
+                    largeFileViewer.updateScrollBars();
+                    updateStatus();
+                }
+            }));
         } catch (IOException e) {
+            statusLabel.setText("Failed to open " + file.getName());
             logger.log(Level.SEVERE, "An exception occurred", e);
+            return;
+        }
+        closeViewer();
+        largeFileViewer = new LargeFileViewer(mapped, textArea.getFont());
+        applyViewerTheme();
+        editorPanel.add(largeFileViewer, "viewer");
+        ((CardLayout) editorPanel.getLayout()).show(editorPanel, "viewer");
+        largeFileViewer.focusView();
+        currentFile = file;
+        updateFileInfo();
+        updateStatus();
+        Metrics.record(Metrics.OPEN, System.nanoTime() - started);
+    }
+
+    private void closeViewer() {
+        if (largeFileViewer == null) return;
+        editorPanel.remove(largeFileViewer);
+        ((CardLayout) editorPanel.getLayout()).show(editorPanel, "editor");
+        largeFileViewer.file().close();
+        largeFileViewer = null;
+    }
+
+    private void applyViewerTheme() {
+        if (largeFileViewer == null) return;
+        if (darkTheme) {
+            largeFileViewer.setColors(new Color(30, 30, 30), Color.LIGHT_GRAY, new Color(30, 30, 30), Color.LIGHT_GRAY);
+        } else {
+            largeFileViewer.setColors(Color.WHITE, Color.BLACK, Color.WHITE, Color.GRAY);
         }
     }
 
+    private void cancelLoading() {
+        if (loadWorker != null) {
+            loadWorker.cancel(true);
+            loadWorker = null;
+            loadingTab = null;
+        }
+    }
+
+    private static String formatThroughput(long bytes, long nanos) {
+        double megabytes = bytes / (1024.0 * 1024.0);
+        double millis = nanos / 1_000_000.0;
+        double perSecond = millis > 0 ? megabytes / (millis / 1000.0) : 0;
+        return String.format("%.1f MB in %.0f ms (%.1f MB/s)", megabytes, millis, perSecond);
+    }
+
+    private class SaveAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            saveFile();
+        }
+    }
+
+    // Единственный путь сохранения: снимок документа в EDT, запись и атомарная замена в фоне
+    private void saveFile(File file) {
+        if (largeFileViewer != null) {
+            statusLabel.setText("Large files are opened read-only");
+            return;
+        }
+        EditorTab tab = activeTab;
+        if (!tab.isLoaded()) {
+            statusLabel.setText(file.getName() + " is still loading");
+            return;
+        }
+        if (tab.isConflict()) {
+            int answer = JOptionPane.showConfirmDialog(this, file.getName()
+                            + " was changed on disk by a project replace while you were editing it.\n"
+                            + "Saving overwrites the replacements. Save anyway?",
+                    "Save", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (answer != JOptionPane.YES_OPTION) return;
+        }
+        char[] content = SaveEngine.snapshot(textArea.getDocument());
+        int edits = tab.edits(); // Правки после снимка оставят вкладку несохраненной
+        currentFile = file;
+        statusLabel.setText("Saving " + file.getName() + "…");
+        saveEngine.save(file.toPath(), content, StandardCharsets.UTF_8, (nanos, error) -> {
+            if (error != null) {
+                statusLabel.setText("Failed to save " + file.getName() + ": " + error.getMessage());
+                logger.log(Level.SEVERE, "An exception occurred", error);
+                return;
+            }
+            Metrics.record(Metrics.SAVE, nanos);
+            String latency = String.format("Saved in %.0f ms", nanos / 1_000_000.0);
+            logger.info(latency + ": " + file);
+            tab.saved(edits); // Обновляем статус сохранения
+            tabEdited(tab);
+            reindex(java.util.List.of(file.toPath()));
+            if (tab == activeTab && largeFileViewer == null) {
+                updateFileInfo();
+                updateStatus(); // Обновляем статус после сохранения файла
+                statusLabel.setText(statusLabel.getText() + " | " + latency);
+            }
+        });
+    }
+
     private void updateStatus() {
+        if (largeFileViewer != null) {
+            MappedTextFile mapped = largeFileViewer.file();
+            String indexing = mapped.isIndexed() ? "" : " (indexing " + mapped.indexProgress() + "%)";
+            statusLabel.setText("Line: " + mapped.lineCount() + " | " + currentFile.getName() + " | Read-only viewer" + indexing);
+            return;
+        }
         int lineCount = textArea.getLineCount();
         String fileStatus = (currentFile != null) ? currentFile.getName() : "File not saved";
         statusLabel.setText("Line: " + lineCount + " | " + fileStatus);
@@ -437,13 +1554,6 @@ public class Main extends JFrame {
         }
     }
 
-    private void updateFileListDisplay() {
-        // Обновляем дерево проекта, если оно уже загружено
-        if (rootNode != null) {
-            ((DefaultTreeModel) projectTree.getModel()).reload(rootNode);
-        }
-    }
-
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             Main editor = new Main();
@@ -0,0 +1,246 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Файл, отображенный в память только для чтения. В памяти хранится разреженный индекс строк
+// (смещение каждой PAGE_LINES-й строки) и несколько декодированных страниц, поэтому расход
+// памяти почти не зависит от размера файла. Концы очень длинных строк индексатор тоже
+// запоминает, чтобы страница с такой строкой не искала перевод строки байт за байтом в EDT
+final class MappedTextFile implements AutoCloseable {
+    static final int PAGE_LINES = 1024; // Строк в одной странице и шаг разреженного индекса
+    static final int MAX_LINE_BYTES = 4096; // Длиннее строки обрезаются при отображении
+    private static final int CACHED_PAGES = 8;
+    private static final long PROGRESS_STEP = 64L << 20; // Публиковать прогресс индексации каждые 64 МБ
+    private static final long CHUNK_SIZE = 1L << 20; // Закрытие файла проверяется после каждого куска
+    private static final long LONG_LINE_BYTES = 64L << 10; // Строки длиннее запоминаются индексатором
+
+    private final Path path;
+    private final Charset charset;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment segment;
+    private final long size;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, String[]> pages = new LinkedHashMap<>(16, 0.75f, true) { // LRU, только из EDT
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    private volatile long[] checkpoints = new long[1024]; // Байтовое смещение строк 0, PAGE_LINES, 2*PAGE_LINES...
+    private volatile int checkpointCount = 1;
+    // Начало каждой длинной строки и смещение ее перевода строки, по возрастанию
+    private volatile long[] longLines = new long[64];
+    private volatile int longLineCount; // Число пар в longLines
+    private volatile long lineCount = 1;
+    private volatile long indexedBytes;
+    private volatile boolean indexed;
+    private volatile boolean closed;
+    private volatile boolean indexerDone;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    // onProgress вызывается из фонового потока по мере построения индекса
+    MappedTextFile(Path path, Charset charset, Runnable onProgress) throws IOException {
+        this.path = path;
+        this.charset = charset;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+        executor.execute(() -> buildIndex(onProgress));
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long lineCount() {
+        return lineCount;
+    }
+
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    int indexProgress() {
+        return size == 0 ? 100 : (int) (indexedBytes * 100 / size);
+    }
+
+    private void buildIndex(Runnable onProgress) {
+        try {
+            long lines = 0;
+            long lineStart = 0;
+            long nextProgress = PROGRESS_STEP;
+            for (long chunk = 0; chunk < size; chunk += CHUNK_SIZE) {
+                if (closed) return;
+                long end = Math.min(size, chunk + CHUNK_SIZE);
+                for (long i = chunk; i < end; i++) {
+                    if (segment.get(ValueLayout.JAVA_BYTE, i) == '\n') {
+                        if (i - lineStart > LONG_LINE_BYTES) {
+                            addLongLine(lineStart, i);
+                        }
+                        lineStart = i + 1;
+                        lines++;
+                        if (lines % PAGE_LINES == 0) {
+                            addCheckpoint(i + 1);
+                        }
+                    }
+                }
+                if (end >= nextProgress && end < size) {
+                    indexedBytes = end;
+                    lineCount = lines + 1;
+                    nextProgress += PROGRESS_STEP;
+                    onProgress.run();
+                }
+            }
+            indexedBytes = size;
+            lineCount = lines + 1;
+            indexed = true;
+            onProgress.run();
+        } finally {
+            indexerDone = true;
+            if (closed) release(); // Файл закрыли во время индексации: отображение освобождает индексатор
+        }
+    }
+
+    private void addCheckpoint(long offset) {
+        long[] current = checkpoints;
+        int count = checkpointCount;
+        if (count == current.length) {
+            long[] grown = new long[count * 2];
+            System.arraycopy(current, 0, grown, 0, count);
+            current = grown;
+            checkpoints = grown; // Массив публикуется раньше счетчика
+        }
+        current[count] = offset;
+        checkpointCount = count + 1;
+    }
+
+    private void addLongLine(long start, long newline) {
+        long[] current = longLines;
+        int count = longLineCount;
+        if (2 * count + 2 > current.length) {
+            long[] grown = new long[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, 2 * count);
+            current = grown;
+            longLines = grown; // Массив публикуется раньше счетчика
+        }
+        current[2 * count] = start;
+        current[2 * count + 1] = newline;
+        longLineCount = count + 1;
+    }
+
+    // Перевод строки, начатой в start, или size, если строка последняя или индексатор до ее конца
+    // еще не дошел. Короткие строки ищутся прямо в отображении, длинные - в записях индексатора
+    private long lineEnd(long start) {
+        long limit = Math.min(size, start + LONG_LINE_BYTES + 1);
+        for (long i = start; i < limit; i++) {
+            if (segment.get(ValueLayout.JAVA_BYTE, i) == '\n') return i;
+        }
+        if (limit == size) return size;
+        int count = longLineCount;
+        long[] entries = longLines;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = entries[2 * middle];
+            if (entry < start) {
+                low = middle + 1;
+            } else if (entry > start) {
+                high = middle - 1;
+            } else {
+                return entries[2 * middle + 1];
+            }
+        }
+        return size;
+    }
+
+    // Текст строки без перевода строки; строки за пределами проиндексированной части пустые
+    String line(long line) {
+        if (line < 0 || line >= lineCount) return "";
+        long page = line / PAGE_LINES;
+        String[] lines = pages.get(page);
+        int index = (int) (line % PAGE_LINES);
+        if (lines == null || (index >= lines.length && !isComplete(lines))) {
+            lines = decodePage(page);
+            pages.put(page, lines);
+        }
+        return index < lines.length ? lines[index] : "";
+    }
+
+    // Страница могла быть декодирована, пока индекс еще не дошел до ее конца
+    private boolean isComplete(String[] lines) {
+        return lines.length == PAGE_LINES || indexed;
+    }
+
+    private String[] decodePage(long page) {
+        if (page >= checkpointCount) return new String[0];
+        long start = checkpoints[(int) page];
+        long total = Math.min(PAGE_LINES, lineCount - page * PAGE_LINES);
+        String[] lines = new String[(int) Math.max(0, total)];
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        long offset = start;
+        for (int i = 0; i < lines.length; i++) {
+            long end = lineEnd(offset);
+            long contentEnd = end;
+            if (contentEnd > offset && segment.get(ValueLayout.JAVA_BYTE, contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            lines[i] = decode(decoder, offset, contentEnd);
+            offset = end + 1;
+        }
+        return lines;
+    }
+
+    private String decode(CharsetDecoder decoder, long from, long to) {
+        long length = to - from;
+        boolean truncated = length > MAX_LINE_BYTES;
+        ByteBuffer bytes = segment.asSlice(from, truncated ? MAX_LINE_BYTES : length).asByteBuffer();
+        try {
+            String text = decoder.reset().decode(bytes).toString();
+            return truncated ? text + "…" : text;
+        } catch (CharacterCodingException e) {
+            return ""; // Недостижимо при CodingErrorAction.REPLACE
+        }
+    }
+
+    // Не ждет индексатор: отображение освобождает тот, кто закончит последним, закрытие
+    // или индексатор (он замечает закрытие после текущего куска)
+    @Override
+    public void close() {
+        closed = true;
+        pages.clear();
+        if (indexerDone) release();
+    }
+
+    private void release() {
+        if (!released.compareAndSet(false, true)) return;
+        executor.shutdown();
+        arena.close();
+    }
+}
@@ -0,0 +1,141 @@
+package com.tailogs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Гистограммы задержек горячих путей редактора. Запись - несколько атомарных инкрементов без
+// блокировок, так что ее можно вызывать из EDT и фоновых потоков. Каждое измерение также
+// отправляется в JFR событием com.tailogs.Latency для разбора записи вне редактора
+final class Metrics {
+    static final String OPEN = "open";
+    static final String SAVE = "save";
+    static final String TREE_LOAD = "tree load";
+    static final String FIRST_OUTPUT = "command first output";
+    static final String CONSOLE_FLUSH = "console flush";
+    static final String EDT_STALL = "EDT stall";
+    static final String STARTUP = "startup to usable window";
+    static final String REPLACE = "project replace";
+
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    static void record(String operation, long nanos) {
+        histograms.computeIfAbsent(operation, _ -> new Histogram()).record(nanos);
+        LatencyEvent event = new LatencyEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    // Снимок всех гистограмм в порядке имен
+    static List<Summary> summaries() {
+        List<Summary> summaries = new ArrayList<>();
+        histograms.forEach((operation, histogram) -> summaries.add(histogram.summary(operation)));
+        summaries.sort((a, b) -> a.operation().compareTo(b.operation()));
+        return summaries;
+    }
+
+    static void reset() {
+        histograms.clear();
+    }
+
+    record Summary(String operation, long count, long p50, long p90, long p99, long max) {
+    }
+
+    // Логарифмическая гистограмма в микросекундах: на каждую степень двойки SUB_BUCKETS
+    // равных корзин, то есть погрешность процентилей не больше 1/SUB_BUCKETS
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            counts.incrementAndGet(bucket(micros));
+            max.accumulateAndGet(micros, Math::max);
+        }
+
+        Summary summary(String operation) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            long largest = max.get(); // Граница корзины не должна превышать реальный максимум
+            return new Summary(operation, total, Math.min(largest, percentile(snapshot, total, 0.50)),
+                    Math.min(largest, percentile(snapshot, total, 0.90)),
+                    Math.min(largest, percentile(snapshot, total, 0.99)), largest);
+        }
+
+        private static int bucket(long micros) {
+            if (micros < SUB_BUCKETS) return (int) micros;
+            int magnitude = 63 - Long.numberOfLeadingZeros(micros); // >= SUB_BITS
+            int sub = (int) (micros >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // Верхняя граница корзины в микросекундах
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (magnitude - SUB_BITS)) - 1;
+        }
+
+        private static long percentile(long[] snapshot, long total, double quantile) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return upperBound(i);
+            }
+            return upperBound(snapshot.length - 1);
+        }
+    }
+
+    @Name("com.tailogs.Latency")
+    @Label("Editor Latency")
+    @Category("BlackParticle")
+    @Description("Duration of an editor hot path: open, save, tree load, console flush")
+    static class LatencyEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("com.tailogs.EdtStall")
+    @Label("EDT Stall")
+    @Category("BlackParticle")
+    @Description("The event dispatch thread did not process events for longer than the watchdog threshold")
+    static class EdtStallEvent extends Event {
+        @Label("Stall")
+        @Timespan(Timespan.NANOSECONDS)
+        long stall;
+
+        @Label("EDT Stack Trace")
+        String stackTrace;
+    }
+}
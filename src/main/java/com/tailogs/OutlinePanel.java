@@ -0,0 +1,63 @@
+package com.tailogs;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// Структура активного файла: объявления в порядке следования с отступом по вложенности.
+// Символы приходят готовыми из SymbolIndex, сама панель файл не разбирает
+class OutlinePanel extends JPanel {
+    private final DefaultListModel<SymbolIndex.Symbol> symbols = new DefaultListModel<>();
+    private final JList<SymbolIndex.Symbol> symbolList = new JList<>(symbols);
+    private final JLabel summaryLabel = new JLabel(" ");
+    private final IntConsumer lineOpener;
+
+    // lineOpener получает номер строки (с единицы) в активном файле
+    OutlinePanel(IntConsumer lineOpener) {
+        super(new BorderLayout());
+        this.lineOpener = lineOpener;
+        symbolList.setBackground(new Color(40, 40, 40)); // Как у дерева проекта
+        symbolList.setForeground(Color.LIGHT_GRAY);
+        symbolList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                SymbolIndex.Symbol symbol = (SymbolIndex.Symbol) value;
+                String text = "  ".repeat(symbol.depth()) + symbol.name() + "  " + symbol.kind().label;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        symbolList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) openSelected();
+            }
+        });
+        symbolList.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) openSelected();
+            }
+        });
+        add(summaryLabel, BorderLayout.NORTH);
+        add(new JScrollPane(symbolList), BorderLayout.CENTER);
+    }
+
+    void show(File file, List<SymbolIndex.Symbol> fileSymbols) {
+        symbols.clear();
+        symbols.addAll(fileSymbols);
+        String name = file != null ? file.getName() : "Untitled";
+        summaryLabel.setText(fileSymbols.isEmpty() ? name + ": no symbols" : name + ": " + fileSymbols.size() + " symbols");
+    }
+
+    private void openSelected() {
+        SymbolIndex.Symbol symbol = symbolList.getSelectedValue();
+        if (symbol != null) lineOpener.accept(symbol.line());
+    }
+}
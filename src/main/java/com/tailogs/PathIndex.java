@@ -0,0 +1,138 @@
+package com.tailogs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+// Компактный индекс путей проекта для быстрого открытия файлов: все относительные пути лежат
+// в одном массиве символов, а массив смещений отмечает начало каждого пути и его имени файла.
+// Индекс неизменяем: созданные и удаленные файлы дают новый индекс (см. changed)
+final class PathIndex {
+    private static final int CHUNK = 8192; // Путей в одной параллельной порции ранжирования
+
+    private final Path root;
+    private final char[] chars;
+    private final int[] starts; // starts[i]..starts[i + 1] - путь номер i
+    private final int[] nameStarts; // Начало имени файла внутри пути
+
+    private PathIndex(Path root, char[] chars, int[] starts, int[] nameStarts) {
+        this.root = root;
+        this.chars = chars;
+        this.starts = starts;
+        this.nameStarts = nameStarts;
+    }
+
+    static PathIndex build(Path root, List<Path> files) {
+        String[] relative = new String[files.size()];
+        for (int i = 0; i < relative.length; i++) {
+            relative[i] = relative(root, files.get(i));
+        }
+        return build(root, relative);
+    }
+
+    private static String relative(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static PathIndex build(Path root, String[] relative) {
+        int total = 0;
+        for (String path : relative) {
+            total += path.length();
+        }
+        char[] chars = new char[total];
+        int[] starts = new int[relative.length + 1];
+        int[] nameStarts = new int[relative.length];
+        int offset = 0;
+        for (int i = 0; i < relative.length; i++) {
+            String path = relative[i];
+            path.getChars(0, path.length(), chars, offset);
+            starts[i] = offset;
+            nameStarts[i] = offset + path.lastIndexOf('/') + 1;
+            offset += path.length();
+        }
+        starts[relative.length] = offset;
+        return new PathIndex(root, chars, starts, nameStarts);
+    }
+
+    // Индекс с учетом созданных и удаленных файлов из событий наблюдателя и сохранений;
+    // this, если набор файлов не изменился (например, файлы только дописывались)
+    PathIndex changed(Collection<Path> paths) {
+        Set<String> added = new LinkedHashSet<>();
+        List<String> gone = new ArrayList<>();
+        for (Path path : paths) {
+            Path normalized = path.toAbsolutePath().normalize();
+            if (normalized.equals(root) || !ProjectFiles.inProject(root, normalized)) continue;
+            if (Files.isRegularFile(normalized)) {
+                added.add(relative(root, normalized));
+            } else if (!Files.exists(normalized)) {
+                gone.add(relative(root, normalized));
+            }
+        }
+        if (added.isEmpty() && gone.isEmpty()) return this;
+        List<String> kept = new ArrayList<>(size() + added.size());
+        boolean removed = false;
+        for (int id = 0; id < size(); id++) {
+            String path = relativePath(id);
+            added.remove(path); // Уже в индексе
+            if (isUnder(path, gone)) {
+                removed = true;
+            } else {
+                kept.add(path);
+            }
+        }
+        if (added.isEmpty() && !removed) return this;
+        kept.addAll(added);
+        return build(root, kept.toArray(String[]::new));
+    }
+
+    private static boolean isUnder(String path, List<String> directories) {
+        for (String directory : directories) {
+            if (path.equals(directory) || path.startsWith(directory + "/")) return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return nameStarts.length;
+    }
+
+    String relativePath(int id) {
+        return new String(chars, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    Path path(int id) {
+        return root.resolve(relativePath(id));
+    }
+
+    // Лучшие limit путей по нечеткому совпадению; при cancelled() возвращает пустой список
+    List<FuzzyMatcher.Match> search(String query, int limit, BooleanSupplier cancelled) {
+        char[] pattern = FuzzyMatcher.pattern(query);
+        if (pattern.length == 0) return List.of();
+        int chunks = (size() + CHUNK - 1) / CHUNK;
+        List<PriorityQueue<FuzzyMatcher.Match>> partial = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            PriorityQueue<FuzzyMatcher.Match> top = new PriorityQueue<>(limit + 1, FuzzyMatcher.BY_SCORE);
+            if (cancelled.getAsBoolean()) return top;
+            int to = Math.min(size(), (chunk + 1) * CHUNK);
+            for (int id = chunk * CHUNK; id < to; id++) {
+                int score = FuzzyMatcher.score(chars, starts[id], starts[id + 1], nameStarts[id], pattern);
+                if (score == FuzzyMatcher.NO_MATCH) continue;
+                if (top.size() < limit) {
+                    top.add(new FuzzyMatcher.Match(id, score));
+                } else if (score > top.peek().score()) {
+                    top.poll();
+                    top.add(new FuzzyMatcher.Match(id, score));
+                }
+            }
+            return top;
+        }).toList();
+        if (cancelled.getAsBoolean()) return List.of();
+        List<FuzzyMatcher.Match> merged = new ArrayList<>();
+        for (PriorityQueue<FuzzyMatcher.Match> top : partial) {
+            merged.addAll(top);
+        }
+        merged.sort(FuzzyMatcher.BY_SCORE.reversed());
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+}
@@ -0,0 +1,111 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Небольшой кэш декодированного текста файлов, соседних с выбранным в дереве. Соседи читаются
+// в фоне заранее, так что переход к следующему файлу не ждет диска. Запись действительна,
+// пока у файла не изменились размер и время изменения
+final class PrefetchCache {
+    private static final Logger logger = Logger.getLogger(PrefetchCache.class.getName());
+
+    private record Entry(String text, long size, long modified) {
+    }
+
+    private final long maxChars;
+    private final long maxFileBytes; // Файлы крупнее не читаются заранее
+    private final Charset charset;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Защищен this
+    private long chars; // Защищен this
+    private final Map<Path, Future<?>> inFlight = new HashMap<>(); // Защищен this
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    PrefetchCache(long maxChars, Charset charset) {
+        this.maxChars = maxChars;
+        this.maxFileBytes = maxChars / 4;
+        this.charset = charset;
+    }
+
+    // Текст файла, если он прочитан заранее и с тех пор не менялся, иначе null
+    String get(Path file) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(file);
+        }
+        if (entry == null) return null;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.size() == entry.size() && attributes.lastModifiedTime().toMillis() == entry.modified()) {
+                return entry.text();
+            }
+        } catch (IOException e) {
+            // Файл удален или недоступен: запись устарела
+        }
+        remove(file);
+        return null;
+    }
+
+    synchronized void remove(Path file) {
+        Entry entry = entries.remove(file);
+        if (entry != null) chars -= entry.text().length();
+    }
+
+    // Заменяет набор фоновых чтений: ненужные больше отменяются, новые ставятся в очередь
+    synchronized void prefetch(List<Path> files) {
+        for (Iterator<Map.Entry<Path, Future<?>>> it = inFlight.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Future<?>> reading = it.next();
+            if (!files.contains(reading.getKey())) {
+                reading.getValue().cancel(true);
+                it.remove();
+            }
+        }
+        for (Path file : files) {
+            if (entries.containsKey(file) || inFlight.containsKey(file)) continue;
+            Future<?>[] self = new Future<?>[1]; // Чтение должно убрать из inFlight только себя
+            FutureTask<Void> reading = new FutureTask<>(() -> read(file, self[0]), null);
+            self[0] = reading;
+            inFlight.put(file, reading);
+            executor.execute(reading);
+        }
+    }
+
+    private void read(Path file, Future<?> self) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile() || attributes.size() > maxFileBytes) return;
+            String text = TextFileReader.read(file, charset, _ -> {
+            });
+            put(file, new Entry(text, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        } catch (InterruptedIOException e) {
+            // Файл перестал быть соседним
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Cannot prefetch " + file, e);
+        } finally {
+            synchronized (this) {
+                inFlight.remove(file, self); // Отмененное старое чтение не снимает более новое
+            }
+        }
+    }
+
+    private synchronized void put(Path file, Entry entry) {
+        remove(file);
+        entries.put(file, entry);
+        chars += entry.text().length();
+        Iterator<Entry> eldestFirst = entries.values().iterator();
+        while (chars > maxChars && eldestFirst.hasNext()) {
+            chars -= eldestFirst.next().text().length();
+            eldestFirst.remove();
+        }
+    }
+}
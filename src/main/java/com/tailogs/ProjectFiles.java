@@ -0,0 +1,53 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+// Обход каталога проекта по тем же правилам, что и дерево: скрытые файлы и каталоги пропускаются
+final class ProjectFiles {
+    private ProjectFiles() {
+    }
+
+    static boolean isHidden(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    // Путь внутри root и не в скрытом каталоге: такие пути попадают в индексы
+    static boolean inProject(Path root, Path path) {
+        if (!path.startsWith(root)) return false;
+        for (Path name : root.relativize(path)) {
+            if (isHidden(name)) return false;
+        }
+        return true;
+    }
+
+    // Все обычные файлы проекта; прерывается, если текущий поток прерван
+    static List<Path> walk(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (Thread.currentThread().isInterrupted()) return FileVisitResult.TERMINATE;
+                return !dir.equals(root) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !isHidden(file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE; // Недоступные файлы просто пропускаются
+            }
+        });
+        return files;
+    }
+}
@@ -0,0 +1,256 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Замена по всему проекту. Поиск идет по тексту файла с диска (переводы строк не трогаются)
+// или по копии открытого буфера. Применение - одна транзакция: новые версии пишутся во временные
+// файлы параллельно и сбрасываются на диск вместе, оригиналы сохраняются жесткими ссылками,
+// затем все файлы подменяются атомарными переносами. При любой ошибке уже подмененные файлы
+// возвращаются из копий
+final class ProjectReplace {
+    private static final int PREVIEW_CHARS = 60; // Символов строки с каждой стороны от совпадения
+
+    private ProjectReplace() {
+    }
+
+    record Query(String text, boolean regex, boolean matchCase, String replacement) {
+        Pattern pattern() {
+            int flags = (regex ? 0 : Pattern.LITERAL) | (matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            return Pattern.compile(text, flags | Pattern.MULTILINE);
+        }
+
+        // Для обычного поиска $ и \ в замене - просто символы
+        String replacementTemplate() {
+            return regex ? replacement : Matcher.quoteReplacement(replacement);
+        }
+    }
+
+    // Копия открытого буфера; edits - счетчик правок вкладки на момент копии
+    record Buffer(String text, int edits, boolean dirty) {
+    }
+
+    // Одна замена: [start, end) исходного текста заменяется на replacement.
+    // before и after - строка с совпадением до и после замены для просмотра
+    record Edit(int start, int end, String original, String replacement, int line, String before, String after) {
+    }
+
+    // Совпадения в одном файле. Для файла с диска modified и size проверяются перед записью,
+    // для буфера - bufferEdits (-1, если источник - диск)
+    record FileChange(Path file, long modified, long size, int bufferEdits, boolean dirty, List<Edit> edits) {
+        boolean fromBuffer() {
+            return bufferEdits >= 0;
+        }
+
+        FileChange withEdits(List<Edit> selected) {
+            return new FileChange(file, modified, size, bufferEdits, dirty, selected);
+        }
+    }
+
+    // Находит все совпадения в файле; null, если их нет или файл не текстовый UTF-8
+    static FileChange scan(Path file, Buffer buffer, Query query, Pattern pattern) throws IOException {
+        if (buffer != null) {
+            List<Edit> edits = find(buffer.text(), query, pattern);
+            return edits.isEmpty() ? null : new FileChange(file, 0, 0, buffer.edits(), buffer.dirty(), edits);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attributes.size() > TrigramIndex.MAX_SCAN_SIZE) {
+            throw new IOException(file + " is too large to replace in"); // Вырос после индексации
+        }
+        String text = readText(file);
+        if (text == null) return null;
+        List<Edit> edits = find(text, query, pattern);
+        if (edits.isEmpty()) return null;
+        return new FileChange(file, attributes.lastModifiedTime().toMillis(), attributes.size(), -1, false, edits);
+    }
+
+    private static List<Edit> find(String text, Query query, Pattern pattern) {
+        List<Edit> edits = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        String template = query.replacementTemplate();
+        StringBuilder replaced = new StringBuilder();
+        int line = 1;
+        int lineStart = 0; // Начало строки, в которой начинается совпадение
+        int lineCounted = 0; // До этого смещения переводы строк уже посчитаны
+        int appended = 0; // Конец предыдущего совпадения: столько исходного текста уже в replaced
+        while (matcher.find()) {
+            if (Thread.currentThread().isInterrupted()) return List.of();
+            // Только до начала совпадения: поиск до конца строки на каждое совпадение в длинной
+            // однострочной (минифицированной) строке был бы квадратичным
+            for (int i = lineCounted; i < matcher.start(); i++) {
+                if (text.charAt(i) == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            lineCounted = matcher.start();
+            int gap = matcher.start() - appended;
+            int length = replaced.length();
+            matcher.appendReplacement(replaced, template); // Раскрывает $1 и \ так же, как replaceAll
+            String replacement = replaced.substring(length + gap);
+            appended = matcher.end();
+            edits.add(preview(text, lineStart, matcher.start(), matcher.end(), replacement, line));
+        }
+        return edits;
+    }
+
+    private static Edit preview(String text, int lineStart, int start, int end, String replacement, int line) {
+        int from = Math.max(lineStart, start - PREVIEW_CHARS);
+        int limit = Math.min(text.length(), end + PREVIEW_CHARS);
+        int to = end;
+        while (to < limit && text.charAt(to) != '\n') {
+            to++;
+        }
+        String prefix = text.substring(from, start).stripLeading();
+        String suffix = text.substring(end, to).stripTrailing();
+        String original = text.substring(start, end);
+        return new Edit(start, end, original, replacement, line, prefix + original + suffix,
+                prefix + replacement + suffix);
+    }
+
+    // null для файлов не в UTF-8 и двоичных: запись их через декодер испортила бы байты
+    private static String readText(Path file) throws IOException {
+        String text;
+        try {
+            text = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+        return text.indexOf('\0') >= 0 ? null : text;
+    }
+
+    // Текст после выбранных замен; edits идут по возрастанию смещений и не пересекаются
+    static String applyEdits(String text, List<Edit> edits) {
+        StringBuilder result = new StringBuilder(text.length());
+        int copied = 0;
+        for (Edit edit : edits) {
+            if (!text.startsWith(edit.original(), edit.start())) {
+                throw new IllegalStateException("Text changed at offset " + edit.start());
+            }
+            result.append(text, copied, edit.start()).append(edit.replacement());
+            copied = edit.end();
+        }
+        return result.append(text, copied, text.length()).toString();
+    }
+
+    private record Prepared(Path target, Path temp, Path backup) {
+    }
+
+    // Записывает все изменения как одно целое: либо заменены все файлы, либо ни один.
+    // bufferTexts - текущий текст чистых открытых буферов, источник которых - буфер;
+    // изменения несохраненных буферов сюда не передаются, они правятся только в редакторе
+    static void commit(List<FileChange> changes, Map<Path, String> bufferTexts) throws IOException {
+        List<Prepared> prepared = new ArrayList<>();
+        List<IOException> errors = new ArrayList<>();
+        changes.parallelStream().forEach(change -> {
+            try {
+                Prepared ready = prepare(change, bufferTexts.get(change.file()));
+                synchronized (prepared) {
+                    prepared.add(ready);
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (errors) {
+                    errors.add(e instanceof IOException io ? io : new IOException(change.file() + ": " + e.getMessage(), e));
+                }
+            }
+        });
+        if (errors.isEmpty()) {
+            // Сброс после записи всех файлов: на ext4 и подобных отдельный fsync на каждый файл
+            // в несколько раз медленнее, чем сбросы, которые журнал объединяет
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Prepared ready : prepared) {
+                    executor.execute(() -> {
+                        try {
+                            SaveEngine.force(ready.temp());
+                        } catch (IOException | RuntimeException e) {
+                            synchronized (errors) {
+                                errors.add(e instanceof IOException io ? io : new IOException(ready.target() + ": " + e.getMessage(), e));
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        if (!errors.isEmpty() || Thread.currentThread().isInterrupted()) {
+            discard(prepared);
+            throw errors.isEmpty() ? new IOException("Replace cancelled") : errors.getFirst();
+        }
+        // Переносы идут последовательно: это быстрые операции с каталогами, а порядок нужен для отката
+        int committed = 0;
+        try {
+            for (Prepared ready : prepared) {
+                SaveEngine.commit(ready.temp(), ready.target());
+                committed++;
+            }
+        } catch (IOException | RuntimeException e) {
+            IOException failure = e instanceof IOException io ? io
+                    : new IOException(prepared.get(committed).target() + ": " + e.getMessage(), e);
+            for (int i = 0; i < committed; i++) {
+                Prepared done = prepared.get(i);
+                try {
+                    SaveEngine.commit(done.backup(), done.target());
+                } catch (IOException | RuntimeException rollback) {
+                    failure.addSuppressed(rollback); // Копия остается рядом с файлом
+                }
+            }
+            discard(prepared.subList(committed, prepared.size()));
+            throw failure;
+        }
+        discard(prepared); // Временных файлов уже нет, удаляются только копии оригиналов
+    }
+
+    private static Prepared prepare(FileChange change, String bufferText) throws IOException {
+        Path target = change.file();
+        String text;
+        if (change.fromBuffer()) {
+            text = bufferText;
+            if (text == null) throw new IOException(target + " is not open anymore");
+        } else {
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            if (attributes.lastModifiedTime().toMillis() != change.modified() || attributes.size() != change.size()) {
+                throw new IOException(target + " changed on disk since the preview");
+            }
+            text = readText(target);
+            if (text == null) throw new IOException(target + " is not a UTF-8 text file anymore");
+        }
+        String replaced = applyEdits(text, change.edits());
+        target = SaveEngine.realPath(target); // Копия и перенос - для самого файла, а не для ссылки на него
+        Path temp = SaveEngine.writeTemp(target, CharBuffer.wrap(replaced), StandardCharsets.UTF_8, false);
+        Path backup = temp.resolveSibling(temp.getFileName() + ".bak");
+        try {
+            try {
+                Files.createLink(backup, target); // Оригинал не копируется, пока ссылка на него жива
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(target, backup, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return new Prepared(target, temp, backup);
+    }
+
+    private static void discard(List<Prepared> prepared) {
+        for (Prepared ready : prepared) {
+            try {
+                Files.deleteIfExists(ready.temp());
+                Files.deleteIfExists(ready.backup());
+            } catch (IOException | RuntimeException e) {
+                // Временный файл останется скрытым рядом с оригиналом
+            }
+        }
+    }
+}
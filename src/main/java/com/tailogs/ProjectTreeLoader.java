@@ -0,0 +1,395 @@
+package com.tailogs;
+
+import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import javax.swing.tree.TreePath;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Ленивая загрузка дерева проекта: содержимое каталога читается только при раскрытии узла,
+// в фоновом потоке, и добавляется в модель порциями. Загруженные каталоги отслеживаются
+// ProjectWatcher, и изменения на диске применяются к дереву точечно, без перезагрузки модели
+class ProjectTreeLoader implements TreeWillExpandListener {
+    static final String LOADING = "Загрузка…"; // Текст узла-заглушки
+    private static final int BATCH_SIZE = 256; // Сколько узлов добавляется в модель за один проход EDT
+    private static final Logger logger = Logger.getLogger(ProjectTreeLoader.class.getName());
+
+    private final JTree tree;
+    private final DefaultTreeModel model;
+    private final DefaultMutableTreeNode rootNode;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<DefaultMutableTreeNode, Future<?>> pending = new HashMap<>(); // Только из EDT
+    private final Map<Path, DefaultMutableTreeNode> loaded = new HashMap<>(); // Загруженные каталоги, только из EDT
+    private final Map<Path, Long> modified = new HashMap<>(); // Время изменения каталога перед чтением, только из EDT
+    // Каталоги, изменившиеся, пока шло их первое чтение; перечитываются после него, только из EDT
+    private final Set<Path> changedWhileScanning = new HashSet<>();
+    private File root; // Открытый каталог
+    private Future<?> validation; // Сверка восстановленного из снимка дерева с диском
+    private final ProjectWatcher watcher;
+    private int generation; // Увеличивается при открытии нового каталога
+
+    ProjectTreeLoader(JTree tree, DefaultMutableTreeNode rootNode, ProjectWatcher watcher) {
+        this.tree = tree;
+        this.model = (DefaultTreeModel) tree.getModel();
+        this.rootNode = rootNode;
+        this.watcher = watcher;
+        tree.addTreeWillExpandListener(this);
+        watcher.addListener(this::directoriesChanged);
+    }
+
+    // Открывает новый каталог: отменяет текущие сканирования и загружает первый уровень
+    void open(File directory) {
+        reset(directory);
+        rootNode.add(new DefaultMutableTreeNode(LOADING));
+        model.reload();
+        scan(directory, rootNode);
+    }
+
+    void cancel() {
+        generation++;
+        for (Future<?> future : pending.values()) {
+            future.cancel(true);
+        }
+        pending.clear();
+        if (validation != null) {
+            validation.cancel(true);
+            validation = null;
+        }
+    }
+
+    File root() {
+        return root;
+    }
+
+    private void reset(File directory) {
+        cancel();
+        watcher.unwatchAll();
+        loaded.clear();
+        modified.clear();
+        changedWhileScanning.clear();
+        root = directory;
+        rootNode.removeAllChildren();
+    }
+
+    // Загруженная часть дерева для снимка рабочего места: родители раньше детей
+    List<WorkspaceSnapshot.Listing> capture() {
+        List<WorkspaceSnapshot.Listing> listings = new ArrayList<>();
+        if (root == null) return listings;
+        Enumeration<TreeNode> nodes = rootNode.breadthFirstEnumeration();
+        while (nodes.hasMoreElements()) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) nodes.nextElement();
+            File directory = node == rootNode ? root : node.getUserObject() instanceof File file ? file : null;
+            if (directory == null || loaded.get(directory.toPath()) != node) continue;
+            List<String> directories = new ArrayList<>();
+            List<String> files = new ArrayList<>();
+            for (int i = 0; i < node.getChildCount(); i++) {
+                DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getChildAt(i);
+                if (child.getUserObject() instanceof File file) {
+                    (child.getAllowsChildren() ? directories : files).add(file.getName());
+                }
+            }
+            listings.add(new WorkspaceSnapshot.Listing(directory, modified.getOrDefault(directory.toPath(), 0L),
+                    tree.isExpanded(new TreePath(node.getPath())), directories, files));
+        }
+        return listings;
+    }
+
+    // Дерево из снимка, построенное вне EDT: узлы верхнего уровня висят на holder и еще не в модели
+    record Restored(File root, List<WorkspaceSnapshot.Listing> listings, DefaultMutableTreeNode holder,
+                    Map<Path, DefaultMutableTreeNode> loaded, Map<Path, Long> modified,
+                    List<DefaultMutableTreeNode> expanded) {
+    }
+
+    // Строит узлы по снимку без обращения к диску; можно вызывать в любом потоке
+    static Restored build(File root, List<WorkspaceSnapshot.Listing> listings) {
+        DefaultMutableTreeNode holder = new DefaultMutableTreeNode();
+        Map<Path, DefaultMutableTreeNode> nodes = new HashMap<>();
+        nodes.put(root.toPath(), holder);
+        Map<Path, DefaultMutableTreeNode> loaded = new HashMap<>();
+        Map<Path, Long> modified = new HashMap<>();
+        List<DefaultMutableTreeNode> expanded = new ArrayList<>();
+        for (WorkspaceSnapshot.Listing listing : listings) {
+            Path path = listing.directory().toPath();
+            DefaultMutableTreeNode node = nodes.get(path);
+            if (node == null) continue; // Родитель не попал в снимок
+            node.removeAllChildren();
+            for (String name : listing.directories()) {
+                File child = new File(listing.directory(), name);
+                DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(child);
+                childNode.add(new DefaultMutableTreeNode(LOADING));
+                node.add(childNode);
+                nodes.put(child.toPath(), childNode);
+            }
+            for (String name : listing.files()) {
+                node.add(new DefaultMutableTreeNode(new File(listing.directory(), name), false));
+            }
+            loaded.put(path, node);
+            modified.put(path, listing.modified());
+            if (listing.expanded()) {
+                expanded.add(node);
+            }
+        }
+        return new Restored(root, listings, holder, loaded, modified, expanded);
+    }
+
+    // Подставляет построенное дерево в модель и раскрывает сохраненные узлы; затем в фоне каждый
+    // каталог сверяется по времени изменения, и перечитываются только изменившиеся
+    void restore(Restored restored) {
+        reset(restored.root());
+        Path rootPath = restored.root().toPath();
+        List<DefaultMutableTreeNode> children = new ArrayList<>();
+        for (int i = 0; i < restored.holder().getChildCount(); i++) {
+            children.add((DefaultMutableTreeNode) restored.holder().getChildAt(i));
+        }
+        restored.holder().removeAllChildren(); // Снимает детей с конца, без поиска каждого в списке
+        for (DefaultMutableTreeNode child : children) {
+            rootNode.add(child);
+        }
+        for (Map.Entry<Path, DefaultMutableTreeNode> entry : restored.loaded().entrySet()) {
+            loaded.put(entry.getKey(), entry.getValue() == restored.holder() ? rootNode : entry.getValue());
+        }
+        modified.putAll(restored.modified());
+        boolean rootLoaded = loaded.containsKey(rootPath);
+        if (!rootLoaded) {
+            rootNode.add(new DefaultMutableTreeNode(LOADING));
+        }
+        model.reload();
+        for (DefaultMutableTreeNode node : restored.expanded()) {
+            // Родители раньше детей, заглушек у них нет
+            tree.expandPath(new TreePath((node == restored.holder() ? rootNode : node).getPath()));
+        }
+        if (!rootLoaded) {
+            scan(restored.root(), rootNode);
+        }
+        validate(restored.listings());
+    }
+
+    private void validate(List<WorkspaceSnapshot.Listing> listings) {
+        int scanGeneration = generation;
+        validation = executor.submit(() -> {
+            long started = System.nanoTime();
+            int changed = 0;
+            for (WorkspaceSnapshot.Listing listing : listings) {
+                if (Thread.currentThread().isInterrupted()) return;
+                File directory = listing.directory();
+                if (!directory.isDirectory()) continue; // Удаленный каталог уберет сверка его родителя
+                Path path = directory.toPath();
+                watcher.watch(path); // До сверки: изменение после нее придет событием
+                long lastModified = directory.lastModified();
+                if (lastModified == listing.modified()) continue;
+                List<DefaultMutableTreeNode> children = listChildren(directory);
+                changed++;
+                SwingUtilities.invokeLater(() -> {
+                    if (scanGeneration == generation) applyListing(path, children, lastModified);
+                });
+            }
+            logger.info(String.format("Validated %d directories from the workspace snapshot, %d changed, in %.0f ms",
+                    listings.size(), changed, (System.nanoTime() - started) / 1_000_000.0));
+        });
+    }
+
+    static boolean isPlaceholder(DefaultMutableTreeNode node) {
+        return LOADING.equals(node.getUserObject());
+    }
+
+    @Override
+    public void treeWillExpand(TreeExpansionEvent event) {
+        DefaultMutableTreeNode node = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+        if (node.getChildCount() == 1 && isPlaceholder((DefaultMutableTreeNode) node.getFirstChild())
+                && node.getUserObject() instanceof File directory) {
+            scan(directory, node);
+        }
+    }
+
+    @Override
+    public void treeWillCollapse(TreeExpansionEvent event) {
+    }
+
+    private void scan(File directory, DefaultMutableTreeNode node) {
+        if (pending.containsKey(node)) return; // Каталог уже сканируется
+        int scanGeneration = generation;
+        long started = System.nanoTime();
+        pending.put(node, executor.submit(() -> {
+            try {
+                watcher.watch(directory.toPath()); // До чтения, как при сверке: изменение после него придет событием
+                long lastModified = directory.lastModified();
+                List<DefaultMutableTreeNode> children = listChildren(directory);
+                List<DefaultMutableTreeNode> batch = new ArrayList<>(Math.min(children.size(), BATCH_SIZE));
+                boolean first = true;
+                for (DefaultMutableTreeNode child : children) {
+                    if (Thread.currentThread().isInterrupted()) return;
+                    batch.add(child);
+                    if (batch.size() == BATCH_SIZE) {
+                        post(directory, node, batch, first, false, scanGeneration, started, lastModified);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                        first = false;
+                    }
+                }
+                post(directory, node, batch, first, true, scanGeneration, started, lastModified);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "An exception occurred", e);
+                watcher.unwatch(directory.toPath());
+                // Узел остается с заглушкой: следующее раскрытие просканирует каталог заново
+                SwingUtilities.invokeLater(() -> {
+                    if (scanGeneration == generation) pending.remove(node);
+                });
+            }
+        }));
+    }
+
+    private void post(File directory, DefaultMutableTreeNode node, List<DefaultMutableTreeNode> batch,
+                      boolean first, boolean last, int scanGeneration, long started, long lastModified) {
+        SwingUtilities.invokeLater(() -> {
+            if (scanGeneration != generation) return; // Результат устарел: открыт другой каталог
+            if (first && node.getChildCount() > 0 && isPlaceholder((DefaultMutableTreeNode) node.getFirstChild())) {
+                Object placeholder = node.getFirstChild();
+                node.remove(0);
+                model.nodesWereRemoved(node, new int[]{0}, new Object[]{placeholder});
+            }
+            if (!batch.isEmpty()) {
+                int start = node.getChildCount();
+                int[] indices = new int[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    node.add(batch.get(i));
+                    indices[i] = start + i;
+                }
+                model.nodesWereInserted(node, indices);
+            }
+            if (last) {
+                Metrics.record(Metrics.TREE_LOAD, System.nanoTime() - started); // От запроса до последнего узла в модели
+                pending.remove(node);
+                Path path = directory.toPath();
+                loaded.put(path, node);
+                modified.put(path, lastModified);
+                if (changedWhileScanning.remove(path)) {
+                    // Событие пришло раньше, чем узел стал загруженным, и было пропущено
+                    executor.submit(() -> directoriesChanged(new ProjectWatcher.Changes(Set.of(), Set.of(path))));
+                }
+                if (node == rootNode) {
+                    tree.expandRow(0);
+                }
+            }
+        });
+    }
+
+    // Вызывается наблюдателем в его потоке: каталоги перечитываются в фоне,
+    // а в EDT применяется только разница
+    private void directoriesChanged(ProjectWatcher.Changes changes) {
+        for (Path directory : changes.directories()) {
+            long lastModified = directory.toFile().lastModified();
+            List<DefaultMutableTreeNode> children = listChildren(directory.toFile());
+            SwingUtilities.invokeLater(() -> applyListing(directory, children, lastModified));
+        }
+    }
+
+    // Приводит детей загруженного каталога к свежему списку: удаляет исчезнувшие узлы
+    // и вставляет новые, сохраняя остальные узлы и состояние раскрытия
+    void applyListing(Path directory, List<DefaultMutableTreeNode> fresh, long lastModified) {
+        DefaultMutableTreeNode node = loaded.get(directory);
+        if (node == null) {
+            // Каталог не загружен, удален из дерева или еще читается
+            if (isScanning(directory)) changedWhileScanning.add(directory);
+            return;
+        }
+        modified.put(directory, lastModified);
+        Set<String> freshKeys = new HashSet<>();
+        for (DefaultMutableTreeNode child : fresh) {
+            freshKeys.add(key(child));
+        }
+        List<Integer> removedIndices = new ArrayList<>();
+        List<Object> removedNodes = new ArrayList<>();
+        Set<String> existing = new HashSet<>();
+        for (int i = 0; i < node.getChildCount(); i++) {
+            DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getChildAt(i);
+            if (isPlaceholder(child) || !freshKeys.contains(key(child))) {
+                removedIndices.add(i);
+                removedNodes.add(child);
+            } else {
+                existing.add(key(child));
+            }
+        }
+        if (!removedIndices.isEmpty()) {
+            for (int i = removedIndices.size() - 1; i >= 0; i--) {
+                node.remove((int) removedIndices.get(i));
+            }
+            for (Object removed : removedNodes) {
+                forget((DefaultMutableTreeNode) removed);
+            }
+            model.nodesWereRemoved(node, removedIndices.stream().mapToInt(Integer::intValue).toArray(), removedNodes.toArray());
+        }
+        // Оба списка отсортированы одинаково, поэтому новые узлы встают на свои места за один проход
+        List<Integer> insertedIndices = new ArrayList<>();
+        for (int i = 0; i < fresh.size(); i++) {
+            DefaultMutableTreeNode child = fresh.get(i);
+            if (!existing.contains(key(child))) {
+                node.insert(child, i);
+                insertedIndices.add(i);
+            }
+        }
+        if (!insertedIndices.isEmpty()) {
+            model.nodesWereInserted(node, insertedIndices.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    private boolean isScanning(Path directory) {
+        for (DefaultMutableTreeNode node : pending.keySet()) {
+            File file = node == rootNode ? root : node.getUserObject() instanceof File f ? f : null;
+            if (file != null && file.toPath().equals(directory)) return true;
+        }
+        return false;
+    }
+
+    // Снимает наблюдение с удаленного поддерева
+    private void forget(DefaultMutableTreeNode removed) {
+        Enumeration<TreeNode> nodes = removed.breadthFirstEnumeration();
+        while (nodes.hasMoreElements()) {
+            DefaultMutableTreeNode child = (DefaultMutableTreeNode) nodes.nextElement();
+            if (child.getUserObject() instanceof File file && loaded.remove(file.toPath()) != null) {
+                modified.remove(file.toPath());
+                watcher.unwatch(file.toPath());
+            }
+            Future<?> scan = pending.remove(child);
+            if (scan != null) {
+                scan.cancel(true);
+                if (child.getUserObject() instanceof File file) watcher.unwatch(file.toPath()); // Взят под наблюдение до чтения
+            }
+        }
+    }
+
+    // Имя узла с признаком каталога: файл, замененный каталогом с тем же именем, - это другой узел
+    private static String key(DefaultMutableTreeNode node) {
+        Object userObject = node.getUserObject();
+        String name = userObject instanceof File file ? file.getName() : String.valueOf(userObject);
+        return node.getAllowsChildren() ? name + "/" : name;
+    }
+
+    // Узлы для видимых элементов каталога: скрытые файлы пропускаются, каталоги идут первыми
+    static List<DefaultMutableTreeNode> listChildren(File directory) {
+        File[] files = directory.listFiles(file -> !file.getName().startsWith("."));
+        if (files == null) return List.of();
+        Arrays.sort(files, Comparator.comparing(File::getName, String.CASE_INSENSITIVE_ORDER));
+        List<DefaultMutableTreeNode> directories = new ArrayList<>();
+        List<DefaultMutableTreeNode> regularFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                DefaultMutableTreeNode node = new DefaultMutableTreeNode(file);
+                node.add(new DefaultMutableTreeNode(LOADING)); // Содержимое загрузится при раскрытии
+                directories.add(node);
+            } else {
+                regularFiles.add(new DefaultMutableTreeNode(file, false));
+            }
+        }
+        directories.addAll(regularFiles);
+        return directories;
+    }
+}
@@ -0,0 +1,159 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Следит за каталогами проекта через WatchService. События копятся, пока файловая система
+// не успокоится (или пока не пройдет MAX_DELAY_MS), и отдаются слушателям одной пачкой.
+// Дерево следит только за загруженными каталогами; индексам нужен рекурсивный наблюдатель
+// (recursive): он сам берет под наблюдение новые каталоги и сообщает о файлах в них
+class ProjectWatcher implements AutoCloseable {
+    static final long DEBOUNCE_MS = 200;
+    static final long MAX_DELAY_MS = 1000; // Даже при непрерывной записи пачка уходит не реже раза в секунду
+    private static final Logger logger = Logger.getLogger(ProjectWatcher.class.getName());
+
+    // paths - измененные, созданные или удаленные пути; directories - каталоги, чье содержимое
+    // изменилось (включая каталоги, для которых события были потеряны при переполнении)
+    record Changes(Set<Path> paths, Set<Path> directories) {
+    }
+
+    private final WatchService service;
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+    private final List<Consumer<Changes>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private final boolean recursive;
+
+    ProjectWatcher() throws IOException {
+        this(false);
+    }
+
+    ProjectWatcher(boolean recursive) throws IOException {
+        this.recursive = recursive;
+        service = FileSystems.getDefault().newWatchService();
+        thread = Thread.ofVirtual().name("project-watcher").start(this::run);
+    }
+
+    // Слушатели вызываются в потоке наблюдателя
+    void addListener(Consumer<Changes> listener) {
+        listeners.add(listener);
+    }
+
+    void watch(Path directory) {
+        if (keys.containsKey(directory)) return;
+        try {
+            keys.put(directory, directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot watch " + directory, e);
+        }
+    }
+
+    // Все нескрытые каталоги под root, по тем же правилам, что и ProjectFiles.walk. Возвращает
+    // обычные файлы найденных каталогов: они могли появиться раньше, чем каталог взят под наблюдение
+    Set<Path> watchTree(Path root) {
+        Set<Path> files = new HashSet<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (Thread.currentThread().isInterrupted()) return FileVisitResult.TERMINATE;
+                    if (!dir.equals(root) && ProjectFiles.isHidden(dir)) return FileVisitResult.SKIP_SUBTREE;
+                    watch(dir); // До обхода содержимого: файл, созданный после, придет событием
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && !ProjectFiles.isHidden(file)) files.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot watch " + root, e);
+        }
+        return files;
+    }
+
+    void unwatch(Path directory) {
+        WatchKey key = keys.remove(directory);
+        if (key != null) key.cancel();
+    }
+
+    void unwatchAll() {
+        for (Path directory : new ArrayList<>(keys.keySet())) {
+            unwatch(directory);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<Path> paths = new HashSet<>();
+                Set<Path> directories = new HashSet<>();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MS);
+                while (key != null) {
+                    collect(key, paths, directories);
+                    if (System.nanoTime() >= deadline) break;
+                    key = service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (paths.isEmpty() && directories.isEmpty()) continue;
+                Changes changes = new Changes(paths, directories);
+                for (Consumer<Changes> listener : listeners) {
+                    try {
+                        listener.accept(changes);
+                    } catch (RuntimeException e) {
+                        // Ошибка одного слушателя не должна останавливать наблюдение
+                        logger.log(Level.SEVERE, "An exception occurred", e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Наблюдатель закрыт
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> paths, Set<Path> directories) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                directories.add(directory);
+                if (recursive) {
+                    paths.addAll(watchTree(directory)); // События потеряны: все файлы считаются измененными
+                }
+            } else {
+                Path child = directory.resolve((Path) event.context());
+                paths.add(child);
+                if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                    directories.add(directory);
+                }
+                if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)
+                        && !ProjectFiles.isHidden(child)) {
+                    paths.addAll(watchTree(child)); // Новый каталог (checkout, распаковка) приходит уже с файлами
+                }
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(directory, key); // Каталог удален
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        service.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.tailogs;
+
+import java.awt.*;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Диалог быстрого открытия файла (Ctrl+P): нечеткий поиск по относительным путям проекта
+class QuickOpenDialog extends FuzzyPickerDialog<PathIndex, FuzzyMatcher.Match> {
+    private final Consumer<Path> opener;
+
+    QuickOpenDialog(Frame owner, Consumer<Path> opener) {
+        super(owner, "Quick open", 600);
+        this.opener = opener;
+    }
+
+    @Override
+    List<FuzzyMatcher.Match> search(PathIndex index, String query, int limit, BooleanSupplier cancelled) {
+        return index.search(query, limit, cancelled);
+    }
+
+    @Override
+    String describe(PathIndex index, FuzzyMatcher.Match match) {
+        return index.relativePath(match.id());
+    }
+
+    @Override
+    String summary(PathIndex index, int found, double millis) {
+        return String.format("%d of %d paths ranked in %.1f ms", found, index.size(), millis);
+    }
+
+    @Override
+    void open(PathIndex index, FuzzyMatcher.Match match) {
+        opener.accept(index.path(match.id()));
+    }
+}
@@ -0,0 +1,276 @@
+package com.tailogs;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Панель замены по файлам проекта. Кандидаты берутся из триграммного индекса, файлы проверяются
+// параллельно, и замены появляются в списке по мере нахождения. Пробел включает и выключает
+// замену (на строке файла - все замены файла), применяются только отмеченные
+class ReplacePanel extends JPanel {
+    private final JTextField queryField = new JTextField();
+    private final JTextField replacementField = new JTextField();
+    private final JCheckBox regexBox = new JCheckBox("Regex");
+    private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+    private final JButton previewButton = new JButton("Preview");
+    private final JButton applyButton = new JButton("Replace selected");
+    private final JLabel summaryLabel = new JLabel("Open a catalog to replace in files");
+    private final DefaultListModel<Row> rows = new DefaultListModel<>();
+    private final JList<Row> rowList = new JList<>(rows);
+    private final Map<ProjectReplace.FileChange, BitSet> excluded = new IdentityHashMap<>(); // Выключенные замены
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Supplier<Map<Path, ProjectReplace.Buffer>> buffers;
+    private final Consumer<List<ProjectReplace.FileChange>> applier;
+    private volatile TrigramIndex index;
+    private Future<?> scan;
+    private volatile int generation; // Меняется только в EDT
+
+    // Строка файла (edit == -1) или одной замены в нем
+    private record Row(ProjectReplace.FileChange change, int edit) {
+    }
+
+    // buffers вызывается в EDT и возвращает копии открытых буферов; applier получает отмеченные замены
+    ReplacePanel(BiConsumer<Path, Integer> opener, Supplier<Map<Path, ProjectReplace.Buffer>> buffers,
+                 Consumer<List<ProjectReplace.FileChange>> applier) {
+        super(new BorderLayout());
+        this.buffers = buffers;
+        this.applier = applier;
+        JPanel findRow = new JPanel(new BorderLayout());
+        findRow.add(new JLabel(" Find: "), BorderLayout.WEST);
+        findRow.add(queryField, BorderLayout.CENTER);
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        options.add(regexBox);
+        options.add(matchCaseBox);
+        findRow.add(options, BorderLayout.EAST);
+        JPanel replaceRow = new JPanel(new BorderLayout());
+        replaceRow.add(new JLabel(" Replace: "), BorderLayout.WEST);
+        replaceRow.add(replacementField, BorderLayout.CENTER);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        buttons.add(previewButton);
+        buttons.add(applyButton);
+        replaceRow.add(buttons, BorderLayout.EAST);
+        JPanel top = new JPanel(new GridLayout(3, 1));
+        top.add(findRow);
+        top.add(replaceRow);
+        top.add(summaryLabel);
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(rowList), BorderLayout.CENTER);
+
+        applyButton.setEnabled(false);
+        rowList.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        rowList.setFixedCellHeight(rowList.getFontMetrics(rowList.getFont()).getHeight() + 2); // Тысячи строк без замеров
+        rowList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, describe((Row) value), index, isSelected, cellHasFocus);
+            }
+        });
+        rowList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Row row = rowList.getSelectedValue();
+                if (e.getClickCount() == 2 && row != null) {
+                    opener.accept(row.change().file(), row.edit() < 0 ? 0 : row.change().edits().get(row.edit()).line());
+                }
+            }
+        });
+        rowList.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0), "toggle");
+        rowList.getActionMap().put("toggle", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                for (Row row : rowList.getSelectedValuesList()) {
+                    toggle(row);
+                }
+                rowList.repaint();
+            }
+        });
+        queryField.addActionListener(_ -> preview());
+        replacementField.addActionListener(_ -> preview());
+        previewButton.addActionListener(_ -> preview());
+        applyButton.addActionListener(_ -> apply());
+    }
+
+    void focusQuery() {
+        queryField.requestFocusInWindow();
+        queryField.selectAll();
+    }
+
+    void setIndex(TrigramIndex index) {
+        this.index = index;
+        summaryLabel.setText(index != null ? "Preview replacements in " + index.fileCount() + " files"
+                : "Open a catalog to replace in files");
+    }
+
+    // Результат применения: список очищается, чтобы устаревшие смещения нельзя было применить снова
+    void finished(String summary) {
+        clear();
+        previewButton.setEnabled(true);
+        summaryLabel.setText(summary);
+    }
+
+    private void clear() {
+        if (scan != null) {
+            scan.cancel(true);
+        }
+        generation++;
+        rows.clear();
+        excluded.clear();
+        applyButton.setEnabled(false);
+    }
+
+    private void preview() {
+        clear();
+        int scanGeneration = generation;
+        TrigramIndex current = index;
+        String text = queryField.getText();
+        if (current == null || text.isEmpty()) return;
+        ProjectReplace.Query query = new ProjectReplace.Query(text, regexBox.isSelected(), matchCaseBox.isSelected(),
+                replacementField.getText());
+        Pattern pattern;
+        try {
+            pattern = query.pattern();
+        } catch (PatternSyntaxException e) {
+            summaryLabel.setText("Invalid regex: " + e.getDescription());
+            return;
+        }
+        Map<Path, ProjectReplace.Buffer> open = buffers.get();
+        summaryLabel.setText("Searching…");
+        long started = System.nanoTime();
+        scan = executor.submit(() -> {
+            // У регулярного выражения нет надежных триграмм, проверяются все файлы индекса
+            Set<Path> candidates = new LinkedHashSet<>(current.candidates(query.regex() ? "" : text));
+            for (Path path : open.keySet()) {
+                if (path.startsWith(current.root())) candidates.add(path); // Текст буфера может отличаться от диска
+            }
+            AtomicInteger edits = new AtomicInteger();
+            AtomicInteger files = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            AtomicReference<String> invalid = new AtomicReference<>(); // Ошибка в $n или \ замены
+            candidates.parallelStream().forEach(file -> {
+                if (Thread.currentThread().isInterrupted() || scanGeneration != generation || invalid.get() != null) return;
+                ProjectReplace.FileChange change;
+                try {
+                    change = ProjectReplace.scan(file, open.get(file), query, pattern);
+                } catch (IOException e) {
+                    failed.incrementAndGet(); // Удаленный или недоступный файл просто пропускается
+                    return;
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    invalid.compareAndSet(null, e.getMessage());
+                    return;
+                }
+                if (change == null) return;
+                edits.addAndGet(change.edits().size());
+                files.incrementAndGet();
+                SwingUtilities.invokeLater(() -> {
+                    if (scanGeneration != generation) return;
+                    List<Row> batch = new ArrayList<>(change.edits().size() + 1);
+                    batch.add(new Row(change, -1));
+                    for (int i = 0; i < change.edits().size(); i++) {
+                        batch.add(new Row(change, i));
+                    }
+                    rows.addAll(batch);
+                    applyButton.setEnabled(true);
+                });
+            });
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            int tooLarge = current.skippedCount();
+            SwingUtilities.invokeLater(() -> {
+                if (scanGeneration != generation) return;
+                if (invalid.get() != null) {
+                    clear(); // Часть файлов уже показана, но применять такую замену нельзя
+                    summaryLabel.setText("Invalid replacement: " + invalid.get());
+                    return;
+                }
+                String skipped = (failed.get() > 0 ? " | " + failed.get() + " unreadable" : "")
+                        + (tooLarge > 0 ? " | " + tooLarge + " skipped (too large)" : "");
+                summaryLabel.setText(String.format("%d replacements in %d files | %d candidates in %d ms%s | Space toggles, double click opens",
+                        edits.get(), files.get(), candidates.size(), millis, skipped));
+            });
+        });
+    }
+
+    private void apply() {
+        List<ProjectReplace.FileChange> selected = new ArrayList<>();
+        int edits = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (row.edit() >= 0) continue;
+            ProjectReplace.FileChange change = row.change();
+            BitSet off = excluded.get(change);
+            if (off == null) {
+                selected.add(change);
+                edits += change.edits().size();
+                continue;
+            }
+            List<ProjectReplace.Edit> chosen = new ArrayList<>();
+            for (int e = 0; e < change.edits().size(); e++) {
+                if (!off.get(e)) chosen.add(change.edits().get(e));
+            }
+            if (!chosen.isEmpty()) {
+                selected.add(change.withEdits(chosen));
+                edits += chosen.size();
+            }
+        }
+        if (selected.isEmpty()) return;
+        if (scan != null) {
+            scan.cancel(true); // Применяется то, что уже показано
+        }
+        generation++;
+        applyButton.setEnabled(false);
+        previewButton.setEnabled(false);
+        summaryLabel.setText("Replacing " + edits + " occurrences in " + selected.size() + " files…");
+        applier.accept(selected);
+    }
+
+    private void toggle(Row row) {
+        ProjectReplace.FileChange change = row.change();
+        BitSet off = excluded.computeIfAbsent(change, _ -> new BitSet());
+        int count = change.edits().size();
+        if (row.edit() >= 0) {
+            off.flip(row.edit());
+        } else if (off.cardinality() == count) {
+            off.clear(); // Все были выключены - включаются все
+        } else {
+            off.set(0, count);
+        }
+    }
+
+    private String describe(Row row) {
+        ProjectReplace.FileChange change = row.change();
+        BitSet off = excluded.get(change);
+        if (row.edit() < 0) {
+            int disabled = off != null ? off.cardinality() : 0;
+            String mark = disabled == 0 ? "[x]" : disabled == change.edits().size() ? "[ ]" : "[-]";
+            TrigramIndex current = index;
+            Path shown = current != null && change.file().startsWith(current.root())
+                    ? current.root().relativize(change.file()) : change.file();
+            String source = change.dirty() ? " (unsaved buffer)" : change.fromBuffer() ? " (open buffer)" : "";
+            return mark + " " + shown + source + " - " + change.edits().size();
+        }
+        ProjectReplace.Edit edit = change.edits().get(row.edit());
+        String mark = off != null && off.get(row.edit()) ? "[ ]" : "[x]";
+        return "    " + mark + " " + edit.line() + ": " + oneLine(edit.before()) + "  =>  " + oneLine(edit.after());
+    }
+
+    private static String oneLine(String text) {
+        return text.replace('\n', '⏎').replace('\r', ' ');
+    }
+}
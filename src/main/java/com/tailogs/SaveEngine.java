@@ -0,0 +1,196 @@
+package com.tailogs;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Сохранение файлов: снимок документа делается в EDT, запись идет в фоне во временный файл
+// рядом с целевым, после fsync временный файл атомарно заменяет оригинал. Повторные сохранения
+// одного файла, пока предыдущее еще пишется, схлопываются в одно (write-behind)
+class SaveEngine {
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    // Результат сохранения: error == null при успехе
+    interface Callback {
+        void saved(long nanos, IOException error);
+    }
+
+    private record PendingSave(char[] content, Charset charset, List<Callback> callbacks) {
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+    private final Map<Path, PendingSave> pending = new HashMap<>(); // Защищен самим собой
+
+    // Копирует содержимое документа в массив без промежуточной строки; вызывать в EDT
+    static char[] snapshot(Document document) {
+        int length = document.getLength();
+        char[] chars = new char[length];
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int offset = 0;
+        try {
+            while (offset < length) {
+                document.getText(offset, length - offset, segment);
+                System.arraycopy(segment.array, segment.offset, chars, offset, segment.count);
+                offset += segment.count;
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e); // Недостижимо: границы взяты из самого документа
+        }
+        return chars;
+    }
+
+    // callback вызывается в EDT
+    void save(Path target, char[] content, Charset charset, Callback callback) {
+        synchronized (pending) {
+            PendingSave previous = pending.get(target);
+            List<Callback> callbacks = new ArrayList<>();
+            if (previous != null) {
+                callbacks.addAll(previous.callbacks()); // Более старый снимок не нужен, только уведомление
+            }
+            callbacks.add(callback);
+            pending.put(target, new PendingSave(content, charset, callbacks));
+            if (previous == null) {
+                executor.execute(() -> drain(target));
+            }
+        }
+    }
+
+    private void drain(Path target) {
+        PendingSave save;
+        synchronized (pending) {
+            save = pending.remove(target);
+        }
+        if (save == null) return;
+        long started = System.nanoTime();
+        IOException error = null;
+        try {
+            writeAtomically(target, CharBuffer.wrap(save.content()), save.charset());
+        } catch (IOException e) {
+            error = e;
+        }
+        long nanos = System.nanoTime() - started;
+        IOException result = error;
+        SwingUtilities.invokeLater(() -> {
+            for (Callback callback : save.callbacks()) {
+                callback.saved(nanos, result);
+            }
+        });
+    }
+
+    static void writeAtomically(Path target, CharBuffer content, Charset charset) throws IOException {
+        Path temp = writeTemp(target, content, charset);
+        try {
+            commit(temp, target);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    // Записывает содержимое во временный файл в каталоге target и сбрасывает его на диск
+    static Path writeTemp(Path target, CharBuffer content, Charset charset) throws IOException {
+        return writeTemp(target, content, charset, true);
+    }
+
+    // Без сброса на диск: при записи многих файлов их сбрасывают потом все вместе (см. force),
+    // тогда файловая система объединяет сбросы в меньшее число записей журнала
+    static Path writeTemp(Path target, CharBuffer content, Charset charset, boolean force) throws IOException {
+        target = realPath(target);
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp;
+        FileChannel created;
+        while (true) {
+            // Не createTempFile: тот создает файл с правами 0600, а новый файл должен получить права
+            // по umask, как при обычной записи
+            temp = directory.resolve("." + target.getFileName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                created = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Имя занято, берется следующее
+            }
+        }
+        try (FileChannel channel = created) {
+            CharsetEncoder encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            // Буфер не больше содержимого: выделение и обнуление 1 МБ на каждый мелкий файл дороже самой записи
+            long estimate = (long) Math.ceil(content.remaining() * (double) encoder.maxBytesPerChar());
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.max(64, Math.min(CHUNK_SIZE, estimate)));
+            CoderResult result;
+            do {
+                result = encoder.encode(content, bytes, true);
+                writeFully(channel, bytes);
+            } while (result.isOverflow());
+            while (encoder.flush(bytes).isOverflow()) {
+                writeFully(channel, bytes);
+            }
+            writeFully(channel, bytes);
+            if (force) {
+                channel.force(true);
+            }
+            copyPermissions(target, temp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    // Файл, на который указывает символическая ссылка: перенос поверх самой ссылки заменил бы ее
+    // обычным файлом. Несуществующий путь возвращается как есть
+    static Path realPath(Path target) throws IOException {
+        return Files.exists(target) ? target.toRealPath() : target;
+    }
+
+    static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    // Атомарно подменяет target временным файлом; при отсутствии атомарного переноса - обычной заменой
+    static void commit(Path temp, Path target) throws IOException {
+        target = realPath(target);
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from)) return;
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException e) {
+            // Не POSIX-система: права остаются по умолчанию
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.tailogs;
+
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.fife.ui.rsyntaxtextarea.Token;
+import org.fife.ui.rsyntaxtextarea.TokenMaker;
+import org.fife.ui.rsyntaxtextarea.TokenMakerFactory;
+import org.fife.ui.rsyntaxtextarea.TokenTypes;
+
+import javax.swing.text.Segment;
+import java.util.*;
+
+// Поиск объявлений в тексте по токенам того же TokenMaker, что подсвечивает файл в редакторе:
+// комментарии и строки уже отделены, остается распознать ключевые слова объявлений и имена
+// перед скобкой на уровне тела класса. Разбор эвристический и не строит синтаксическое дерево
+final class SymbolExtractor {
+    // container - имена объемлющих объявлений через точку, depth - их количество
+    record Declaration(String container, String name, SymbolIndex.Kind kind, int line, int depth) {
+    }
+
+    // Ключевые слова, за которыми следует имя типа или функции, по языкам
+    private static final Map<String, Set<String>> CLASS_KEYWORDS = Map.ofEntries(
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_C, Set.of("struct", "union", "enum")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_CPLUSPLUS, Set.of("class", "struct", "union", "enum", "namespace")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_JAVA, Set.of("class", "interface", "enum", "record")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_CSHARP, Set.of("class", "interface", "enum", "struct", "record", "namespace")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, Set.of("class")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_GO, Set.of("type")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_SCALA, Set.of("class", "trait", "object")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_PHP, Set.of("class", "interface", "trait", "namespace")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_DART, Set.of("class", "enum", "mixin", "extension")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_PYTHON, Set.of("class")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_RUBY, Set.of("class", "module")),
+            Map.entry(SyntaxConstants.SYNTAX_STYLE_PERL, Set.of("package")));
+    private static final Map<String, Set<String>> FUNCTION_KEYWORDS = Map.of(
+            SyntaxConstants.SYNTAX_STYLE_PYTHON, Set.of("def"),
+            SyntaxConstants.SYNTAX_STYLE_RUBY, Set.of("def"),
+            SyntaxConstants.SYNTAX_STYLE_GO, Set.of("func"),
+            SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, Set.of("function"),
+            SyntaxConstants.SYNTAX_STYLE_PHP, Set.of("function"),
+            SyntaxConstants.SYNTAX_STYLE_SCALA, Set.of("def"),
+            SyntaxConstants.SYNTAX_STYLE_LUA, Set.of("function"),
+            SyntaxConstants.SYNTAX_STYLE_PERL, Set.of("sub"));
+    // Слова, после которых имя со скобкой - вызов или выражение, а не объявление
+    private static final Set<String> CONTROL_WORDS = Set.of("if", "else", "elif", "for", "foreach", "while", "do",
+            "switch", "case", "default", "return", "new", "throw", "throws", "catch", "try", "finally",
+            "synchronized", "sizeof", "typeof", "instanceof", "await", "yield", "assert", "delete", "in", "of",
+            "not", "and", "or", "using", "lock", "goto", "super", "this", "echo", "print", "defer", "go", "select",
+            "when", "match", "then", "unless", "until", "with", "import", "from", "as", "is", "extends", "implements");
+    // Языки с фигурными скобками: вложенность считается по скобкам, иначе - по отступам
+    private static final Set<String> BRACE_STYLES = Set.of(SyntaxConstants.SYNTAX_STYLE_C,
+            SyntaxConstants.SYNTAX_STYLE_CPLUSPLUS, SyntaxConstants.SYNTAX_STYLE_JAVA, SyntaxConstants.SYNTAX_STYLE_CSHARP,
+            SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, SyntaxConstants.SYNTAX_STYLE_GO, SyntaxConstants.SYNTAX_STYLE_SCALA,
+            SyntaxConstants.SYNTAX_STYLE_PHP, SyntaxConstants.SYNTAX_STYLE_DART);
+    // Языки, где методы объявляются без ключевого слова: имя со скобкой на уровне тела класса
+    private static final Set<String> MEMBER_STYLES = Set.of(SyntaxConstants.SYNTAX_STYLE_CPLUSPLUS,
+            SyntaxConstants.SYNTAX_STYLE_JAVA, SyntaxConstants.SYNTAX_STYLE_CSHARP,
+            SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, SyntaxConstants.SYNTAX_STYLE_DART);
+    // Языки, где функции верхнего уровня объявляются как "тип имя("
+    private static final Set<String> TOP_LEVEL_STYLES = Set.of(SyntaxConstants.SYNTAX_STYLE_C,
+            SyntaxConstants.SYNTAX_STYLE_CPLUSPLUS, SyntaxConstants.SYNTAX_STYLE_DART);
+
+    // TokenMaker не потокобезопасен: у каждого потока свой экземпляр на язык
+    private static final ThreadLocal<Map<String, TokenMaker>> tokenMakers = ThreadLocal.withInitial(HashMap::new);
+
+    // Что стоит перед именем: от этого зависит, объявление ли "имя("
+    private enum Previous {START, TYPE, OTHER}
+
+    private record Container(String name, int level) { // level - глубина скобок тела или отступ
+    }
+
+    private final String style;
+    private final boolean braces;
+    private final Set<String> classKeywords;
+    private final Set<String> functionKeywords;
+    private final List<Declaration> declarations = new ArrayList<>();
+    private final Deque<Container> containers = new ArrayDeque<>();
+    private int depth; // Глубина фигурных скобок
+    private Previous previous = Previous.START;
+    private String previousLexeme = "";
+    private String candidate; // Имя, за которым может последовать "("
+    private Previous candidatePrevious;
+    private int candidateLine;
+    private boolean classPending; // Встретилось ключевое слово класса
+    private String className;
+    private int classLine;
+    private boolean classRecorded;
+    private boolean functionPending; // Встретилось ключевое слово функции
+    private String functionName;
+    private int functionLine;
+    private int skipParens; // Пропускаемая группа в скобках: получатель метода Go "func (r *T) Name("
+
+    private SymbolExtractor(String style) {
+        this.style = style;
+        this.braces = BRACE_STYLES.contains(style);
+        this.classKeywords = CLASS_KEYWORDS.getOrDefault(style, Set.of());
+        this.functionKeywords = FUNCTION_KEYWORDS.getOrDefault(style, Set.of());
+    }
+
+    static boolean supports(String style) {
+        return !SyntaxConstants.SYNTAX_STYLE_NONE.equals(style);
+    }
+
+    static List<Declaration> extract(String text, String style) {
+        if (!supports(style) || text.isEmpty()) return List.of();
+        TokenMaker tokenMaker = tokenMakers.get()
+                .computeIfAbsent(style, _ -> TokenMakerFactory.getDefaultInstance().getTokenMaker(style));
+        SymbolExtractor extractor = new SymbolExtractor(style);
+        char[] chars = text.toCharArray();
+        Segment segment = new Segment();
+        int tokenType = TokenTypes.NULL;
+        int line = 1;
+        int lineStart = 0;
+        while (lineStart <= chars.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < chars.length && chars[lineEnd] != '\n') lineEnd++;
+            segment.array = chars;
+            segment.offset = lineStart;
+            segment.count = lineEnd - lineStart;
+            Token token = tokenMaker.getTokenList(segment, tokenType, 0);
+            // Строка внутри многострочного комментария или строки не задает отступ
+            int indent = tokenType == TokenTypes.NULL ? indent(chars, lineStart, lineEnd) : -1;
+            tokenType = extractor.line(token, indent, line);
+            lineStart = lineEnd + 1;
+            line++;
+        }
+        return extractor.declarations;
+    }
+
+    private static int indent(char[] chars, int from, int to) {
+        int indent = 0;
+        for (int i = from; i < to; i++) {
+            if (chars[i] == ' ') indent++;
+            else if (chars[i] == '\t') indent += 4;
+            else break;
+        }
+        return indent;
+    }
+
+    // Разбирает токены строки и возвращает тип последнего: с него начнется следующая строка
+    private int line(Token token, int indent, int line) {
+        boolean first = true;
+        int lastType = TokenTypes.NULL;
+        for (Token t = token; t != null; t = t.getNextToken()) {
+            lastType = t.getType();
+            if (!t.isPaintable() || t.isCommentOrWhitespace()) continue;
+            if (first && !braces && indent >= 0) {
+                while (!containers.isEmpty() && containers.peek().level() >= indent) {
+                    containers.pop(); // Строка с меньшим отступом закрывает объемлющие объявления
+                }
+            }
+            first = false;
+            String lexeme = t.getLexeme();
+            if (isWord(t, lexeme)) {
+                word(lexeme, indent, line);
+            } else if (t.getType() == TokenTypes.ANNOTATION) {
+                previous = Previous.START;
+            } else {
+                punctuation(lexeme);
+            }
+            previousLexeme = lexeme;
+        }
+        if (!braces && functionPending && functionName != null) {
+            function(functionName, functionLine); // "def name" без скобок в Ruby
+        }
+        return lastType;
+    }
+
+    private static boolean isWord(Token token, String lexeme) {
+        int type = token.getType();
+        if (type != TokenTypes.IDENTIFIER && type != TokenTypes.RESERVED_WORD && type != TokenTypes.RESERVED_WORD_2
+                && type != TokenTypes.DATA_TYPE && type != TokenTypes.FUNCTION && type != TokenTypes.VARIABLE) {
+            return false;
+        }
+        char c = lexeme.charAt(0);
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private void word(String word, int indent, int line) {
+        candidate = null;
+        if (skipParens > 0) return;
+        boolean member = ".".equals(previousLexeme) || "->".equals(previousLexeme);
+        if (functionPending) {
+            functionName = word; // В цепочке "M.name" или "self.name" именем считается последнее слово
+            return;
+        }
+        if (classPending && classKeywords.contains(word)) return; // "enum class Name", "type Name struct"
+        if (classPending && className == null) {
+            className = word;
+            classLine = line;
+            if (!braces) {
+                add(word, SymbolIndex.Kind.CLASS, line);
+                containers.push(new Container(word, indent));
+                classPending = false;
+            } else if (!recordsAtBrace()) {
+                add(word, SymbolIndex.Kind.CLASS, line);
+                classRecorded = true;
+            }
+            return;
+        }
+        if (!member && classKeywords.contains(word)) {
+            classPending = true;
+            className = null;
+            classRecorded = false;
+            return;
+        }
+        if (!member && functionKeywords.contains(word)) {
+            classPending = false;
+            functionPending = true;
+            functionName = null;
+            functionLine = line;
+            return;
+        }
+        candidate = word;
+        candidatePrevious = member ? Previous.OTHER : previous;
+        candidateLine = line;
+        previous = CONTROL_WORDS.contains(word) ? Previous.OTHER : Previous.TYPE; // "Outer.Inner name(" - тоже тип
+    }
+
+    // В C и C++ "struct name" бывает и типом переменной, поэтому класс засчитывается только с телом
+    private boolean recordsAtBrace() {
+        return SyntaxConstants.SYNTAX_STYLE_C.equals(style) || SyntaxConstants.SYNTAX_STYLE_CPLUSPLUS.equals(style);
+    }
+
+    private void punctuation(String lexeme) {
+        String name = candidate;
+        candidate = null;
+        if (skipParens > 0) {
+            if ("(".equals(lexeme)) skipParens++;
+            else if (")".equals(lexeme)) skipParens--;
+            return;
+        }
+        if (functionPending) {
+            if ("(".equals(lexeme) && functionName == null) {
+                skipParens = 1;
+                return;
+            }
+            if (".".equals(lexeme) || "::".equals(lexeme) || ":".equals(lexeme) && SyntaxConstants.SYNTAX_STYLE_LUA.equals(style)) {
+                return; // Продолжение имени: "M.name", "M:name"
+            }
+            if (functionName != null) {
+                function(functionName, functionLine); // "name(", "name {", "name:", "name ="
+            } else {
+                functionPending = false;
+            }
+        }
+        if (classPending && (!braces || className == null)) {
+            classPending = false; // "record.field", "record = ..." - не объявление
+        } else if (classPending) {
+            if ("{".equals(lexeme)) {
+                if (className != null) {
+                    if (!classRecorded) add(className, SymbolIndex.Kind.CLASS, classLine);
+                    containers.push(new Container(className, depth + 1));
+                }
+                classPending = false;
+            } else if (";".equals(lexeme) || "=".equals(lexeme) || recordsAtBrace() && ("(".equals(lexeme) || ")".equals(lexeme))) {
+                classPending = false;
+            }
+        }
+        if ("(".equals(lexeme) && name != null && isDeclaration()) {
+            add(name, containers.isEmpty() ? SymbolIndex.Kind.FUNCTION : SymbolIndex.Kind.METHOD, candidateLine);
+        }
+        switch (lexeme) {
+            case "{" -> {
+                depth++;
+                previous = Previous.START;
+            }
+            case "}" -> {
+                depth = Math.max(0, depth - 1);
+                while (braces && !containers.isEmpty() && containers.peek().level() > depth) {
+                    containers.pop();
+                }
+                previous = Previous.START;
+            }
+            case ";" -> previous = Previous.START;
+            case ">", "*", "&", "]", "::", "?" -> previous = Previous.TYPE; // List<T> name(, char *name(, int[] name(
+            default -> previous = Previous.OTHER;
+        }
+    }
+
+    // "имя(" - объявление, если стоит на уровне тела класса (или на верхнем уровне после типа)
+    private boolean isDeclaration() {
+        if (containers.isEmpty()) {
+            return depth == 0 && TOP_LEVEL_STYLES.contains(style) && candidatePrevious == Previous.TYPE;
+        }
+        return MEMBER_STYLES.contains(style) && depth == containers.peek().level()
+                && candidatePrevious != Previous.OTHER;
+    }
+
+    private void function(String name, int line) {
+        functionPending = false;
+        boolean method = !containers.isEmpty() && (!braces || depth == containers.peek().level());
+        add(name, method ? SymbolIndex.Kind.METHOD : SymbolIndex.Kind.FUNCTION, line);
+    }
+
+    private void add(String name, SymbolIndex.Kind kind, int line) {
+        StringBuilder container = new StringBuilder();
+        for (Iterator<Container> it = containers.descendingIterator(); it.hasNext(); ) {
+            if (!container.isEmpty()) container.append('.');
+            container.append(it.next().name());
+        }
+        declarations.add(new Declaration(container.toString(), name, kind, line, containers.size()));
+    }
+}
@@ -0,0 +1,228 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+// Таблица объявлений (классов, функций, методов) всех файлов проекта. Файлы разбираются
+// параллельно токенами RSyntaxTextArea (см. SymbolExtractor); у каждого файла символы лежат
+// компактно: имена с объемлющими объявлениями в одном массиве символов и числа в массиве int.
+// Изменившиеся файлы переразбираются по одному, поиск и структура файла диск не читают
+final class SymbolIndex {
+    static final long MAX_FILE_SIZE = 1L << 20; // Большие файлы не разбираются
+    private static final int BATCH_SIZE = 2048; // Файлов за один параллельный проход
+    private static final int FIELDS = 5; // Начало полного имени, начало имени, конец, строка, вид и глубина
+
+    enum Kind {
+        CLASS("class"), FUNCTION("function"), METHOD("method");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    // qualifiedName - имя с объемлющими объявлениями через точку, имя начинается с nameStart
+    record Symbol(Path file, String qualifiedName, int nameStart, Kind kind, int line, int depth) {
+        String name() {
+            return qualifiedName.substring(nameStart);
+        }
+    }
+
+    private record FileSymbols(long modified, long size, char[] names, int[] data) {
+        int count() {
+            return data.length / FIELDS;
+        }
+    }
+
+    private record Candidate(Path file, FileSymbols symbols, int index, int score) {
+    }
+
+    private static final Comparator<Candidate> BY_SCORE = Comparator.comparingInt(Candidate::score);
+
+    private final Path root;
+    private final Map<Path, FileSymbols> files = new ConcurrentHashMap<>();
+
+    private SymbolIndex(Path root) {
+        this.root = root;
+    }
+
+    static SymbolIndex build(Path root, List<Path> paths) {
+        SymbolIndex index = new SymbolIndex(root);
+        index.update(paths, List.of());
+        return index;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    int fileCount() {
+        return files.size();
+    }
+
+    int symbolCount() {
+        int count = 0;
+        for (FileSymbols symbols : files.values()) {
+            count += symbols.count();
+        }
+        return count;
+    }
+
+    boolean contains(Path file) {
+        return files.containsKey(file);
+    }
+
+    // Переразбирает изменившиеся файлы параллельно; неизменные по размеру и времени пропускаются
+    void update(List<Path> changed, List<Path> removed) {
+        for (Path path : removed) {
+            files.remove(path);
+        }
+        for (int start = 0; start < changed.size(); start += BATCH_SIZE) {
+            if (Thread.currentThread().isInterrupted()) return;
+            changed.subList(start, Math.min(changed.size(), start + BATCH_SIZE)).parallelStream().forEach(path -> {
+                FileSymbols symbols = index(path, files.get(path));
+                if (symbols == null) {
+                    files.remove(path);
+                } else {
+                    files.put(path, symbols);
+                }
+            });
+        }
+    }
+
+    // Изменения от ProjectWatcher и сохранений: пути вне проекта пропускаются,
+    // удаленный каталог убирает все файлы под ним
+    void changed(Set<Path> paths) {
+        List<Path> changed = new ArrayList<>();
+        List<Path> removed = new ArrayList<>();
+        for (Path path : paths) {
+            if (!ProjectFiles.inProject(root, path)) continue;
+            if (Files.isRegularFile(path)) {
+                changed.add(path);
+            } else if (!Files.exists(path)) {
+                for (Path known : files.keySet()) {
+                    if (known.startsWith(path)) removed.add(known);
+                }
+            }
+        }
+        update(changed, removed);
+    }
+
+    // Символы файла в порядке объявления; пустой список, если файл не разобран
+    List<Symbol> symbols(Path file) {
+        FileSymbols symbols = files.get(file);
+        if (symbols == null) return List.of();
+        List<Symbol> result = new ArrayList<>(symbols.count());
+        for (int i = 0; i < symbols.count(); i++) {
+            result.add(symbol(file, symbols, i));
+        }
+        return result;
+    }
+
+    // Лучшие limit символов по нечеткому совпадению имени; при cancelled() возвращает пустой список
+    List<Symbol> search(String query, int limit, BooleanSupplier cancelled) {
+        char[] pattern = FuzzyMatcher.pattern(query);
+        if (pattern.length == 0) return List.of();
+        List<Map.Entry<Path, FileSymbols>> entries = new ArrayList<>(files.entrySet());
+        int chunkSize = 1024;
+        int chunks = (entries.size() + chunkSize - 1) / chunkSize;
+        List<PriorityQueue<Candidate>> partial = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            PriorityQueue<Candidate> top = new PriorityQueue<>(limit + 1, BY_SCORE);
+            if (cancelled.getAsBoolean()) return top;
+            int to = Math.min(entries.size(), (chunk + 1) * chunkSize);
+            for (int e = chunk * chunkSize; e < to; e++) {
+                FileSymbols symbols = entries.get(e).getValue();
+                int[] data = symbols.data();
+                for (int i = 0; i < symbols.count(); i++) {
+                    int at = i * FIELDS;
+                    int score = FuzzyMatcher.score(symbols.names(), data[at], data[at + 2], data[at + 1], pattern);
+                    if (score == FuzzyMatcher.NO_MATCH) continue;
+                    if (top.size() < limit) {
+                        top.add(new Candidate(entries.get(e).getKey(), symbols, i, score));
+                    } else if (score > top.peek().score()) {
+                        top.poll();
+                        top.add(new Candidate(entries.get(e).getKey(), symbols, i, score));
+                    }
+                }
+            }
+            return top;
+        }).toList();
+        if (cancelled.getAsBoolean()) return List.of();
+        List<Candidate> merged = new ArrayList<>();
+        for (PriorityQueue<Candidate> top : partial) {
+            merged.addAll(top);
+        }
+        merged.sort(BY_SCORE.reversed());
+        List<Symbol> result = new ArrayList<>(Math.min(limit, merged.size()));
+        for (Candidate candidate : merged.subList(0, Math.min(limit, merged.size()))) {
+            result.add(symbol(candidate.file(), candidate.symbols(), candidate.index()));
+        }
+        return result;
+    }
+
+    // Символы текста, которого нет в индексе: несохраненный или открытый вне проекта буфер
+    static List<Symbol> extract(Path file, String text, String syntaxStyle) {
+        FileSymbols symbols = pack(0, 0, SymbolExtractor.extract(text, syntaxStyle));
+        List<Symbol> result = new ArrayList<>(symbols.count());
+        for (int i = 0; i < symbols.count(); i++) {
+            result.add(symbol(file, symbols, i));
+        }
+        return result;
+    }
+
+    // null - файл удален, слишком велик или не поддерживается; previous возвращается, если файл не менялся
+    private static FileSymbols index(Path path, FileSymbols previous) {
+        String style = Main.getSyntaxStyle(path.getFileName().toString());
+        if (!SymbolExtractor.supports(style)) return null;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile() || attributes.size() > MAX_FILE_SIZE) return null;
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (previous != null && previous.modified() == modified && previous.size() == attributes.size()) {
+                return previous;
+            }
+            String text = TextFileReader.read(path, StandardCharsets.UTF_8, _ -> {
+            });
+            return pack(modified, attributes.size(), SymbolExtractor.extract(text, style));
+        } catch (IOException | RuntimeException e) {
+            return null; // Недоступные и неразбираемые файлы просто пропускаются
+        }
+    }
+
+    private static FileSymbols pack(long modified, long size, List<SymbolExtractor.Declaration> declarations) {
+        StringBuilder names = new StringBuilder();
+        int[] data = new int[declarations.size() * FIELDS];
+        for (int i = 0; i < declarations.size(); i++) {
+            SymbolExtractor.Declaration declaration = declarations.get(i);
+            int at = i * FIELDS;
+            data[at] = names.length();
+            if (!declaration.container().isEmpty()) {
+                names.append(declaration.container()).append('.');
+            }
+            data[at + 1] = names.length();
+            names.append(declaration.name());
+            data[at + 2] = names.length();
+            data[at + 3] = declaration.line();
+            data[at + 4] = declaration.kind().ordinal() << 16 | declaration.depth();
+        }
+        char[] chars = new char[names.length()];
+        names.getChars(0, names.length(), chars, 0);
+        return new FileSymbols(modified, size, chars, data);
+    }
+
+    private static Symbol symbol(Path file, FileSymbols symbols, int index) {
+        int at = index * FIELDS;
+        int[] data = symbols.data();
+        String qualifiedName = new String(symbols.names(), data[at], data[at + 2] - data[at]);
+        return new Symbol(file, qualifiedName, data[at + 1] - data[at], Kind.values()[data[at + 4] >>> 16],
+                data[at + 3], data[at + 4] & 0xFFFF);
+    }
+}
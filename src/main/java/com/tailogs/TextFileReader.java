@@ -0,0 +1,97 @@
+package com.tailogs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+// Потоковое чтение текстового файла крупными блоками через FileChannel и CharsetDecoder.
+// Переводы строк \r\n и \r приводятся к \n, как это делает документ Swing
+final class TextFileReader {
+    static final int CHUNK_SIZE = 1 << 20; // 1 МБ за одно чтение
+
+    private TextFileReader() {
+    }
+
+    // progress получает число прочитанных байт после каждого блока
+    static String read(Path path, Charset charset, LongConsumer progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File is too large to be loaded into the editor: " + size + " bytes");
+            }
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+            CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+            StringBuilder text = new StringBuilder((int) size);
+            LineEndings lineEndings = new LineEndings(text);
+            long bytesRead = 0;
+            boolean eof = false;
+            while (!eof) {
+                if (Thread.interrupted()) throw new InterruptedIOException("File loading cancelled");
+                int n = channel.read(in);
+                eof = n < 0;
+                if (n > 0) {
+                    bytesRead += n;
+                    progress.accept(bytesRead);
+                }
+                in.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(in, out, eof);
+                    lineEndings.drain(out);
+                } while (result.isOverflow());
+                in.compact();
+            }
+            while (decoder.flush(out).isOverflow()) {
+                lineEndings.drain(out);
+            }
+            lineEndings.drain(out);
+            return text.toString();
+        }
+    }
+
+    // Переносит декодированные символы в StringBuilder, заменяя \r\n и \r на \n
+    private static final class LineEndings {
+        private final StringBuilder text;
+        private boolean skipLineFeed; // Предыдущий блок закончился на \r
+
+        LineEndings(StringBuilder text) {
+            this.text = text;
+        }
+
+        void drain(CharBuffer buffer) {
+            buffer.flip();
+            char[] chars = buffer.array();
+            int start = buffer.arrayOffset() + buffer.position();
+            int end = start + buffer.remaining();
+            int segment = start;
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                if (c == '\r') {
+                    text.append(chars, segment, i - segment).append('\n');
+                    segment = i + 1;
+                    skipLineFeed = true;
+                } else {
+                    if (c == '\n' && skipLineFeed) {
+                        text.append(chars, segment, i - segment);
+                        segment = i + 1;
+                    }
+                    skipLineFeed = false;
+                }
+            }
+            text.append(chars, segment, end - segment);
+            buffer.clear();
+        }
+    }
+}
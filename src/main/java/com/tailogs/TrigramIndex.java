@@ -0,0 +1,532 @@
+package com.tailogs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+// Триграммный индекс файлов проекта для поиска по содержимому. Для каждой триграммы байтов
+// (ASCII приводится к нижнему регистру) хранится сжатый список номеров файлов, где она встречается.
+// Запрос пересекает списки своих триграмм и проверяет только оставшихся кандидатов.
+// Изменившийся файл получает новый номер, старый помечается удаленным; файлы читаются без
+// блокировки, а списки подменяются под блокировкой записи. Когда удаленных номеров набирается
+// много, живые перенумеровываются подряд
+final class TrigramIndex {
+    static final long MAX_FILE_SIZE = 1L << 20; // Большие файлы не индексируются
+    // Неиндексированные большие файлы не отсеиваются по триграммам и проверяются напрямую, но не
+    // больше этого размера; более крупные пропускаются, и поиск с заменой сообщают, сколько их
+    static final long MAX_SCAN_SIZE = Long.getLong("blackparticle.search.maxScanSize", 64L << 20);
+    private static final int MAGIC = 0x42505449; // "BPTI"
+    private static final int VERSION = 1;
+    private static final int BATCH_SIZE = 2048; // Файлов за один проход построения
+    private static final int SHARDS = 16; // Слияние списков идет параллельно по диапазонам триграмм
+    private static final int LEAF_SIZE = 16;
+    private static final int COMPACT_MIN_DEAD = 4096; // Меньше удаленных номеров не стоит перенумерации
+
+    record Hit(Path file, int line, String text) {
+    }
+
+    private record FileEntry(Path path, long modified, long size) {
+    }
+
+    private final Path root;
+    private final List<FileEntry> files = new ArrayList<>();
+    private final BitSet dead = new BitSet(); // Удаленные или устаревшие номера файлов
+    private final Map<Path, Integer> ids = new HashMap<>(); // Живой номер каждого файла
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object updates = new Object(); // Обновления идут по одному: порядок версий файла сохраняется
+
+    private TrigramIndex(Path root) {
+        this.root = root;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    int fileCount() {
+        lock.readLock().lock();
+        try {
+            return files.size() - dead.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static TrigramIndex build(Path root, List<Path> paths) {
+        TrigramIndex index = new TrigramIndex(root);
+        index.update(paths, List.of());
+        return index;
+    }
+
+    // Сверяет индекс с текущим списком файлов и переиндексирует только изменившиеся
+    void refresh(List<Path> paths) {
+        Map<Path, FileEntry> known = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (int id : ids.values()) {
+                known.put(files.get(id).path(), files.get(id));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Path> changed = new ArrayList<>();
+        for (Path path : paths) {
+            FileEntry previous = known.remove(path);
+            if (previous == null || !previous.equals(entry(path))) {
+                changed.add(path);
+            }
+        }
+        List<Path> removed = new ArrayList<>(known.keySet());
+        if (!changed.isEmpty() || !removed.isEmpty()) {
+            update(changed, removed);
+        }
+    }
+
+    // Изменения от ProjectWatcher и записи самого редактора: файлы вне проекта и в скрытых
+    // каталогах пропускаются, как при обходе; удаленный каталог убирает все файлы под ним
+    void changed(Collection<Path> paths) {
+        List<Path> changed = new ArrayList<>();
+        List<Path> gone = new ArrayList<>();
+        for (Path path : paths) {
+            Path normalized = path.toAbsolutePath().normalize();
+            if (!ProjectFiles.inProject(root, normalized)) continue;
+            if (Files.isRegularFile(normalized)) {
+                changed.add(normalized);
+            } else if (!Files.exists(normalized)) {
+                gone.add(normalized);
+            }
+        }
+        List<Path> removed = new ArrayList<>();
+        if (!gone.isEmpty()) {
+            lock.readLock().lock();
+            try {
+                for (Path known : ids.keySet()) {
+                    for (Path path : gone) {
+                        if (known.startsWith(path)) removed.add(known);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        if (!changed.isEmpty() || !removed.isEmpty()) {
+            update(changed, removed);
+        }
+    }
+
+    // Помечает старые версии файлов удаленными и индексирует новые под новыми номерами
+    void update(List<Path> changed, List<Path> removed) {
+        synchronized (updates) {
+            lock.writeLock().lock();
+            try {
+                markDead(removed);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (int start = 0; start < changed.size(); start += BATCH_SIZE) {
+                if (Thread.currentThread().isInterrupted()) return;
+                List<Path> batch = changed.subList(start, Math.min(changed.size(), start + BATCH_SIZE));
+                int[][] trigrams = new int[batch.size()][];
+                FileEntry[] entries = new FileEntry[batch.size()];
+                // Чтение и разбор файлов - параллельно в fork-join пуле и без блокировки: поиск
+                // продолжает отвечать по прежним версиям, пока идет, например, переключение ветки
+                ForkJoinPool.commonPool().invoke(new ExtractTask(batch, trigrams, entries, 0, batch.size()));
+                lock.writeLock().lock();
+                try {
+                    markDead(batch);
+                    indexBatch(trigrams, entries);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                int deadCount = dead.cardinality();
+                if (deadCount >= COMPACT_MIN_DEAD && deadCount * 4 >= files.size()) {
+                    compact();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Под блокировкой записи
+    private void markDead(List<Path> paths) {
+        for (Path path : paths) {
+            Integer id = ids.remove(path);
+            if (id != null) dead.set(id);
+        }
+    }
+
+    // Под блокировкой записи: живые файлы получают номера подряд, удаленные исчезают из списков
+    private void compact() {
+        int[] remap = new int[files.size()];
+        List<FileEntry> live = new ArrayList<>(files.size() - dead.cardinality());
+        for (int id = 0; id < files.size(); id++) {
+            if (dead.get(id)) {
+                remap[id] = -1;
+            } else {
+                remap[id] = live.size();
+                live.add(files.get(id));
+            }
+        }
+        Iterator<Map.Entry<Integer, Postings>> entries = postings.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, Postings> entry = entries.next();
+            Postings compacted = new Postings();
+            for (int id : entry.getValue().decode()) {
+                if (remap[id] >= 0) compacted.add(remap[id]);
+            }
+            if (compacted.count == 0) {
+                entries.remove();
+            } else {
+                entry.setValue(compacted);
+            }
+        }
+        files.clear();
+        files.addAll(live);
+        dead.clear();
+        ids.clear();
+        for (int id = 0; id < files.size(); id++) {
+            ids.put(files.get(id).path(), id);
+        }
+    }
+
+    // Под блокировкой записи
+    private void indexBatch(int[][] trigrams, FileEntry[] entries) {
+        int firstId = files.size();
+        for (int i = 0; i < entries.length; i++) {
+            files.add(entries[i]); // Двоичные и большие файлы остаются без триграмм
+            Integer previous = ids.put(entries[i].path(), firstId + i);
+            if (previous != null) dead.set(previous); // Путь повторился в одной пачке
+        }
+        // Номера файлов в каждом списке должны идти по возрастанию, поэтому каждый поток
+        // обрабатывает свой диапазон триграмм для всех файлов пачки по порядку
+        List<Map<Integer, Postings>> shards = IntStream.range(0, SHARDS).parallel().mapToObj(shard -> {
+            int low = shard << 20;
+            int high = (shard + 1) << 20;
+            Map<Integer, Postings> local = new HashMap<>();
+            for (int i = 0; i < trigrams.length; i++) {
+                int[] keys = trigrams[i];
+                if (keys == null) continue;
+                int from = lowerBound(keys, low);
+                for (int k = from; k < keys.length && keys[k] < high; k++) {
+                    Postings list = local.get(keys[k]);
+                    if (list == null) {
+                        list = postings.get(keys[k]);
+                        if (list == null) list = new Postings();
+                        local.put(keys[k], list);
+                    }
+                    list.add(firstId + i);
+                }
+            }
+            return local;
+        }).toList();
+        for (Map<Integer, Postings> shard : shards) {
+            postings.putAll(shard);
+        }
+    }
+
+    private static int lowerBound(int[] keys, int value) {
+        int index = Arrays.binarySearch(keys, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static FileEntry entry(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileEntry(path, attributes.lastModifiedTime().toMillis(), attributes.size());
+        } catch (IOException e) {
+            return new FileEntry(path, -1, -1);
+        }
+    }
+
+    private static final class ExtractTask extends RecursiveAction {
+        private final List<Path> batch;
+        private final int[][] trigrams;
+        private final FileEntry[] entries;
+        private final int from;
+        private final int to;
+
+        ExtractTask(List<Path> batch, int[][] trigrams, FileEntry[] entries, int from, int to) {
+            this.batch = batch;
+            this.trigrams = trigrams;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    entries[i] = entry(batch.get(i));
+                    trigrams[i] = extract(entries[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ExtractTask(batch, trigrams, entries, from, middle),
+                    new ExtractTask(batch, trigrams, entries, middle, to));
+        }
+    }
+
+    // Отсортированные уникальные триграммы файла или null для двоичных и недоступных файлов
+    private static int[] extract(FileEntry entry) {
+        if (entry.size() < 0 || entry.size() > MAX_FILE_SIZE) return null;
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry.path());
+        } catch (IOException e) {
+            return null;
+        }
+        int[] keys = new int[Math.max(0, bytes.length - 2)];
+        int count = 0;
+        int key = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = bytes[i];
+            if (b == 0) return null; // Двоичный файл
+            key = ((key << 8) | fold(b)) & 0xFFFFFF;
+            if (i >= 2) keys[count++] = key;
+        }
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[unique - 1] != keys[i]) keys[unique++] = keys[i];
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    private static int fold(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (b | 0x20) : (b & 0xFF);
+    }
+
+    // Файлы, которые могут содержать query без учета регистра. Триграммы с не-ASCII байтами
+    // не используются для отбора: регистр в них индекс не выравнивает
+    List<Path> candidates(String query) {
+        byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        List<Postings> lists = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int key = 0;
+            boolean missing = false; // Триграммы нет ни в одном проиндексированном файле
+            for (int i = 0; i < bytes.length && !missing; i++) {
+                key = ((key << 8) | fold(bytes[i])) & 0xFFFFFF;
+                if (i >= 2 && bytes[i] >= 0 && bytes[i - 1] >= 0 && bytes[i - 2] >= 0) {
+                    Postings list = postings.get(key);
+                    missing = list == null;
+                    lists.add(list);
+                }
+            }
+            int[] ids;
+            if (missing) {
+                ids = new int[0];
+            } else if (lists.isEmpty()) {
+                ids = IntStream.range(0, files.size()).toArray();
+            } else {
+                lists.sort(Comparator.comparingInt(list -> list.count));
+                ids = lists.get(0).decode();
+                for (int i = 1; i < lists.size() && ids.length > 0; i++) {
+                    ids = lists.get(i).intersect(ids);
+                }
+            }
+            List<Path> result = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                if (!dead.get(id) && files.get(id).size() <= MAX_SCAN_SIZE) result.add(files.get(id).path());
+            }
+            if (!lists.isEmpty()) {
+                for (int id = 0; id < files.size(); id++) {
+                    if (!dead.get(id) && unindexed(files.get(id))) result.add(files.get(id).path());
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Большой файл без триграмм, который поиск проверяет напрямую
+    private static boolean unindexed(FileEntry entry) {
+        return entry.size() > MAX_FILE_SIZE && entry.size() <= MAX_SCAN_SIZE;
+    }
+
+    // Файлы больше MAX_SCAN_SIZE: их не проверяют ни поиск, ни замена
+    int skippedCount() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (int id = 0; id < files.size(); id++) {
+                if (!dead.get(id) && files.get(id).size() > MAX_SCAN_SIZE) count++;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Проверяет кандидата построчно и возвращает найденные строки
+    static List<Hit> findInFile(Path file, String query, int limit) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<Hit> hits = new ArrayList<>();
+        try {
+            if (Files.size(file) > MAX_SCAN_SIZE) return hits;
+        } catch (IOException e) {
+            return hits;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null && hits.size() < limit) {
+                number++;
+                if (line.toLowerCase(Locale.ROOT).contains(needle)) {
+                    hits.add(new Hit(file, number, line.strip()));
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Файл удален или не в UTF-8: пропускаем
+        }
+        return hits;
+    }
+
+    // Сохраняет только живые файлы, перенумеровывая их подряд
+    void save(Path target) throws IOException {
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            int[] remap = new int[files.size()];
+            int live = 0;
+            for (int id = 0; id < files.size(); id++) {
+                remap[id] = dead.get(id) ? -1 : live++;
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeInt(live);
+            for (int id = 0; id < files.size(); id++) {
+                if (remap[id] < 0) continue;
+                FileEntry entry = files.get(id);
+                out.writeUTF(root.relativize(entry.path()).toString());
+                out.writeLong(entry.modified());
+                out.writeLong(entry.size());
+            }
+            List<Map.Entry<Integer, Postings>> entries = new ArrayList<>(postings.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<Integer, Postings> entry : entries) {
+                Postings compacted = new Postings();
+                for (int id : entry.getValue().decode()) {
+                    if (remap[id] >= 0) compacted.add(remap[id]);
+                }
+                out.writeInt(entry.getKey());
+                out.writeInt(compacted.count);
+                out.writeInt(compacted.length);
+                out.write(compacted.data, 0, compacted.length);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // null, если сохраненный индекс отсутствует, поврежден или построен для другого каталога
+    static TrigramIndex load(Path source, Path root) {
+        if (!Files.isRegularFile(source)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())) {
+                return null;
+            }
+            TrigramIndex index = new TrigramIndex(root);
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                FileEntry entry = new FileEntry(root.resolve(in.readUTF()), in.readLong(), in.readLong());
+                index.ids.put(entry.path(), index.files.size());
+                index.files.add(entry);
+            }
+            int postingCount = in.readInt();
+            for (int i = 0; i < postingCount; i++) {
+                int key = in.readInt();
+                Postings list = new Postings();
+                list.count = in.readInt();
+                list.length = in.readInt();
+                list.data = new byte[list.length];
+                in.readFully(list.data);
+                list.last = list.count > 0 ? list.decode()[list.count - 1] : -1;
+                if (list.count > 0) index.postings.put(key, list);
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Возрастающий список номеров файлов, сжатый разностями в varint
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int length;
+        int count;
+        int last = -1;
+
+        void add(int id) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int delta = id - last;
+            last = id;
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            count++;
+        }
+
+        int[] decode() {
+            int[] ids = new int[count];
+            int position = 0;
+            int value = -1;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                ids[i] = value;
+            }
+            return ids;
+        }
+
+        // Оставляет из sorted только номера, входящие в этот список
+        int[] intersect(int[] sorted) {
+            int[] result = new int[Math.min(sorted.length, count)];
+            int size = 0;
+            int position = 0;
+            int value = -1;
+            int j = 0;
+            for (int i = 0; i < count && j < sorted.length; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                while (j < sorted.length && sorted[j] < value) j++;
+                if (j < sorted.length && sorted[j] == value) result[size++] = value;
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tailogs;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Состояние рабочего места при закрытии: загруженная часть дерева проекта (содержимое каталогов
+// со временем их изменения и признаком раскрытия), открытые файлы и позиции каретки.
+// При запуске дерево строится из снимка сразу, а сверка с диском идет в фоне
+record WorkspaceSnapshot(File root, List<Listing> listings, List<OpenFile> files, int active) {
+    private static final int MAGIC = 0x42505753; // "BPWS"
+    private static final int VERSION = 1;
+
+    // Содержимое каталога в порядке дерева: сначала подкаталоги, затем файлы.
+    // modified - время изменения каталога до чтения содержимого: если оно не изменилось,
+    // список на диске тот же
+    record Listing(File directory, long modified, boolean expanded, List<String> directories, List<String> files) {
+    }
+
+    record OpenFile(File file, int caret) {
+    }
+
+    static Path defaultLocation() throws IOException {
+        return AppData.directory("workspace").resolve("last.snapshot");
+    }
+
+    // Каталоги записываются относительно корня, родитель раньше детей
+    void save(Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root != null ? root.getPath() : "");
+            out.writeInt(root != null ? listings.size() : 0);
+            if (root != null) {
+                Path rootPath = root.toPath();
+                for (Listing listing : listings) {
+                    out.writeUTF(rootPath.relativize(listing.directory().toPath()).toString());
+                    out.writeLong(listing.modified());
+                    out.writeBoolean(listing.expanded());
+                    writeNames(out, listing.directories());
+                    writeNames(out, listing.files());
+                }
+            }
+            out.writeInt(files.size());
+            for (OpenFile file : files) {
+                out.writeUTF(file.file().getPath());
+                out.writeInt(file.caret());
+            }
+            out.writeInt(active);
+        }
+        SaveEngine.commit(temp, target); // Прерванная запись не портит предыдущий снимок
+    }
+
+    // null, если снимка нет или он поврежден
+    static WorkspaceSnapshot load(Path source) {
+        if (!Files.isRegularFile(source)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            String rootName = in.readUTF();
+            File root = rootName.isEmpty() ? null : new File(rootName);
+            int listingCount = in.readInt();
+            List<Listing> listings = new ArrayList<>(listingCount);
+            for (int i = 0; i < listingCount; i++) {
+                String relative = in.readUTF();
+                File directory = relative.isEmpty() ? root : new File(root, relative);
+                listings.add(new Listing(directory, in.readLong(), in.readBoolean(), readNames(in), readNames(in)));
+            }
+            int fileCount = in.readInt();
+            List<OpenFile> files = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                files.add(new OpenFile(new File(in.readUTF()), in.readInt()));
+            }
+            return new WorkspaceSnapshot(root, listings, files, in.readInt());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+}